@@ -11,6 +11,10 @@ import com.tomesh.worldsyncer.GithubBackupMod;
 import com.tomesh.worldsyncer.config.ModConfig;
 import com.tomesh.worldsyncer.config.ModConfig.WorldBackupEntry;
 import com.tomesh.worldsyncer.core.GithubService;
+import com.tomesh.worldsyncer.core.PushOutbox;
+import com.tomesh.worldsyncer.core.RepoMaintenance;
+import com.tomesh.worldsyncer.core.SyncBackend;
+import com.tomesh.worldsyncer.core.SyncScheduler;
 
 public class ClientInit implements ClientModInitializer {
     private static GithubService githubServiceInstance;
@@ -20,11 +24,11 @@ public class ClientInit implements ClientModInitializer {
         GithubBackupMod.LOGGER.info("GitHub Backup Client Initializing..."); // Use the correct Mod ID's LOGGER
         ModConfig config = GithubBackupMod.getConfig();
 
-        if (config != null && config.githubAccessToken != null) {
-            githubServiceInstance = new GithubService(config.githubAccessToken);
+        if (config != null) {
+            githubServiceInstance = new GithubService(SyncBackend.fromConfig(config));
         } else {
             GithubBackupMod.LOGGER
-                    .warn("Initial config or token is null during ClientInit. GithubService not created yet.");
+                    .warn("Initial config is null during ClientInit. GithubService not created yet.");
         }
 
         // Listen for config updates to re-initialize service if token changes
@@ -32,10 +36,11 @@ public class ClientInit implements ClientModInitializer {
             config.subscribeToUpdates(() -> {
                 GithubBackupMod.LOGGER.info("Config updated on client. Re-initializing GithubService.");
                 ModConfig newConfig = GithubBackupMod.getConfig();
-                if (newConfig != null && newConfig.githubAccessToken != null) {
-                    githubServiceInstance = new GithubService(newConfig.githubAccessToken);
+                if (newConfig != null) {
+                    SyncScheduler.get().setParallelism(newConfig.maxParallelSyncs);
+                    githubServiceInstance = new GithubService(SyncBackend.fromConfig(newConfig));
                 } else {
-                    GithubBackupMod.LOGGER.warn("Config or token is null after update. GithubService not re-created.");
+                    GithubBackupMod.LOGGER.warn("Config is null after update. GithubService not re-created.");
                     githubServiceInstance = null;
                 }
             });
@@ -43,6 +48,37 @@ public class ClientInit implements ClientModInitializer {
             GithubBackupMod.LOGGER.error("ModConfig was null in ClientInit, cannot subscribe to updates.");
         }
 
+        // Repack world repositories while the player is in the menus; checked once
+        // a minute, each world at most every half hour
+        final int[] maintenanceTicks = { 0 };
+        ClientTickEvents.END_CLIENT_TICK.register(client -> {
+            if (++maintenanceTicks[0] < 1200) {
+                return;
+            }
+            maintenanceTicks[0] = 0;
+            ModConfig current = GithubBackupMod.getConfig();
+            if (current != null && current.backgroundMaintenance && isNoWorldLoaded(client)
+                    && SyncScheduler.get().isIdle()) {
+                RepoMaintenance.get().checkWorlds(GithubService.getSavesDir(), current.backedUpWorlds.keySet(),
+                        () -> isNoWorldLoaded(MinecraftClient.getInstance()));
+            }
+        });
+
+        // Retry failed pushes in the background; the outbox decides which are due
+        final int[] outboxTicks = { 0 };
+        ClientTickEvents.END_CLIENT_TICK.register(client -> {
+            if (++outboxTicks[0] < 200) {
+                return;
+            }
+            outboxTicks[0] = 0;
+            if (githubServiceInstance != null) {
+                PushOutbox.get().retryDue(githubServiceInstance);
+            }
+        });
+
+        // Progress of running backups and pulls, in game and in the menus
+        ClientTickEvents.END_CLIENT_TICK.register(TransferToast::showIfActive);
+
         // After GithubService is initialized, scan for all Minecraft world repos and
         // update config and auto-clone as needed
         if (githubServiceInstance != null) {
@@ -133,6 +169,9 @@ public class ClientInit implements ClientModInitializer {
                                 && !backupEntry.repoFullName.isEmpty()) {
                             java.io.File worldDir = new java.io.File(savesDirFile, realWorldName);
                             githubServiceInstance.pullWorld(worldDir, backupEntry.repoFullName);
+                        } else if (localWorlds.contains(realWorldName)) {
+                            // Regions a restore in the last session had not downloaded yet
+                            githubServiceInstance.resumeRestore(new java.io.File(savesDirFile, realWorldName));
                         }
                     }
                 }
@@ -146,19 +185,24 @@ public class ClientInit implements ClientModInitializer {
         }, "WorldSaver-GitHubAutoConfig").start();
     }
 
+    // Not even the integrated server of a world that is still shutting down
+    private static boolean isNoWorldLoaded(MinecraftClient client) {
+        return client.world == null && !client.isIntegratedServerRunning();
+    }
+
     public static GithubService getGithubService() {
         if (githubServiceInstance == null) {
             GithubBackupMod.LOGGER.warn(
                     "GithubService was null when requested. Attempting re-initialization (if config is now available).");
             ModConfig config = GithubBackupMod.getConfig();
-            if (config != null && config.githubAccessToken != null && !config.githubAccessToken.isEmpty()) {
-                githubServiceInstance = new GithubService(config.githubAccessToken);
+            if (config != null && SyncBackend.fromConfig(config).getSetupProblem() == null) {
+                githubServiceInstance = new GithubService(SyncBackend.fromConfig(config));
                 if (githubServiceInstance == null) {
                     GithubBackupMod.LOGGER.error("Failed to create GithubService instance even with config.");
                 }
             } else {
                 GithubBackupMod.LOGGER
-                        .error("Cannot initialize GithubService on demand: Config or token is still null/empty.");
+                        .error("Cannot initialize GithubService on demand: Config or backend settings still missing.");
             }
         }
         return githubServiceInstance;
@@ -170,6 +214,25 @@ public class ClientInit implements ClientModInitializer {
      * This is called on config screen open and on startup.
      */
     public static void cleanConfigOfNonexistentWorlds() {
+        // Try to get remote worlds if possible
+        java.util.Set<String> remoteWorlds = new java.util.HashSet<>();
+        try {
+            if (githubServiceInstance != null) {
+                java.util.Map<String, String> remoteMap = githubServiceInstance.listMinecraftWorldRepos().get();
+                remoteWorlds.addAll(remoteMap.keySet());
+            }
+        } catch (Exception e) {
+            GithubBackupMod.LOGGER.warn("Could not fetch remote worlds for config cleanup: {}", e.getMessage());
+        }
+        cleanConfigOfNonexistentWorlds(remoteWorlds);
+    }
+
+    /**
+     * Same as {@link #cleanConfigOfNonexistentWorlds()} with an already fetched
+     * set of remote world names, so callers on the render thread never wait on
+     * GitHub.
+     */
+    public static void cleanConfigOfNonexistentWorlds(java.util.Set<String> remoteWorlds) {
         try {
             GithubBackupMod.LOGGER.info("Running config cleanup for non-existent worlds...");
             ModConfig configToUpdate = GithubBackupMod.getConfig();
@@ -182,16 +245,6 @@ public class ClientInit implements ClientModInitializer {
                         localWorlds.add(f.getName());
                 }
             }
-            // Try to get remote worlds if possible
-            java.util.Set<String> remoteWorlds = new java.util.HashSet<>();
-            try {
-                if (githubServiceInstance != null) {
-                    java.util.Map<String, String> remoteMap = githubServiceInstance.listMinecraftWorldRepos().get();
-                    remoteWorlds.addAll(remoteMap.keySet());
-                }
-            } catch (Exception e) {
-                GithubBackupMod.LOGGER.warn("Could not fetch remote worlds for config cleanup: {}", e.getMessage());
-            }
             java.util.Set<String> allWorlds = new java.util.HashSet<>();
             for (String local : localWorlds) {
                 allWorlds.add(local);
@@ -0,0 +1,145 @@
+package com.tomesh.worldsyncer;
+
+import com.tomesh.worldsyncer.config.ModConfig;
+import com.tomesh.worldsyncer.core.ExitFlush;
+import com.tomesh.worldsyncer.core.GithubService;
+import com.tomesh.worldsyncer.core.TransferMetrics;
+
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.gui.screen.MessageScreen;
+import net.minecraft.client.gui.screen.Screen;
+import net.minecraft.client.gui.widget.ButtonWidget;
+import net.minecraft.text.Text;
+
+import java.util.List;
+
+/**
+ * Shown while the game is closing and worlds still have backups to push.
+ * Quits by itself as soon as the {@link ExitFlush} is done.
+ */
+public class ExitFlushScreen extends Screen {
+    private static final int MAX_TRANSFER_LINES = 5;
+
+    // Set once the game may really stop; until then every stop request is held
+    private static boolean released;
+    private static boolean holding;
+
+    private final ExitFlush flush;
+
+    private ExitFlushScreen(ExitFlush flush) {
+        super(Text.literal("Saving world backups"));
+        this.flush = flush;
+    }
+
+    /**
+     * Called when the game is asked to stop. Returns true if the stop must wait:
+     * the open world is closed, the flush starts and this screen shows until it
+     * is done. Returns false once the flush finished or if there is nothing to
+     * wait for.
+     */
+    public static boolean holdExit(MinecraftClient client) {
+        if (released) {
+            return false;
+        }
+        if (holding) {
+            // Closing the window asks again every frame
+            return true;
+        }
+        ModConfig config = GithubBackupMod.getConfig();
+        if (config == null || !config.flushOnExit
+                || config.backedUpWorlds.values().stream().noneMatch(entry -> entry.enabled)) {
+            return false;
+        }
+        GithubService service = ClientInit.getGithubService();
+        if (service == null) {
+            return false;
+        }
+        holding = true;
+        // Not from inside the frame that asked to stop
+        client.send(() -> {
+            boolean shown = false;
+            try {
+                if (client.world != null) {
+                    boolean singleplayer = client.isInSingleplayer();
+                    client.world.disconnect();
+                    if (singleplayer) {
+                        // Blocks until the server saved; its backup is queued on shutdown
+                        client.disconnect(new MessageScreen(Text.translatable("menu.savingLevel")));
+                    } else {
+                        client.disconnect();
+                    }
+                }
+                client.setScreen(new ExitFlushScreen(ExitFlush.start(service)));
+                shown = true;
+            } finally {
+                if (!shown) {
+                    // Without the screen nothing would ever let the game stop
+                    holding = false;
+                    released = true;
+                    client.scheduleStop();
+                }
+            }
+        });
+        return true;
+    }
+
+    @Override
+    protected void init() {
+        addDrawableChild(ButtonWidget.builder(Text.literal("Quit Without Waiting"), btn -> release())
+                .dimensions(width / 2 - 100, height - 40, 200, 20).build());
+    }
+
+    @Override
+    public void tick() {
+        if (flush.isDone()) {
+            release();
+        }
+    }
+
+    private void release() {
+        released = true;
+        if (client != null) {
+            client.scheduleStop();
+        }
+    }
+
+    @Override
+    public boolean shouldCloseOnEsc() {
+        return false;
+    }
+
+    @Override
+    public void render(DrawContext context, int mouseX, int mouseY, float delta) {
+        renderBackground(context);
+        int y = height / 4;
+        context.drawCenteredTextWithShadow(textRenderer, title, width / 2, y, 0xFFFFFF);
+        y += 20;
+        String progress = flush.isDiscovering() ? "Looking for worlds with unsaved changes..."
+                : "Backed up " + flush.getCompleted() + " of " + flush.getTotal() + " world(s)";
+        context.drawCenteredTextWithShadow(textRenderer, Text.literal(progress), width / 2, y, 0xAAAAAA);
+        y += 16;
+        List<TransferMetrics> active = TransferMetrics.active();
+        for (TransferMetrics metrics : active.subList(0, Math.min(active.size(), MAX_TRANSFER_LINES))) {
+            StringBuilder line = new StringBuilder(metrics.getWorldName()).append(": ").append(metrics.getStatus());
+            float fraction = metrics.getFraction();
+            if (fraction >= 0) {
+                line.append(' ').append((int) (fraction * 100)).append('%');
+            }
+            context.drawCenteredTextWithShadow(textRenderer, Text.literal(line.toString()), width / 2, y, 0xFFFFFF);
+            y += 12;
+        }
+        if (active.size() > MAX_TRANSFER_LINES) {
+            context.drawCenteredTextWithShadow(textRenderer,
+                    Text.literal("and " + (active.size() - MAX_TRANSFER_LINES) + " more"), width / 2, y, 0xAAAAAA);
+            y += 12;
+        }
+        long rate = flush.getBytesPerSecond();
+        if (rate > 0) {
+            context.drawCenteredTextWithShadow(textRenderer,
+                    Text.literal("Uploading " + TransferToast.formatBytes(rate) + "/s in total"), width / 2, y + 8,
+                    0xAAAAAA);
+        }
+        super.render(context, mouseX, mouseY, delta);
+    }
+}
@@ -0,0 +1,43 @@
+package com.tomesh.worldsyncer;
+
+import net.minecraft.world.storage.StorageIoWorker;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The game's open storage IO workers by folder. A save only queues chunk,
+ * entity and POI writes on these; the region files are not complete before
+ * the workers got through them.
+ */
+public final class StorageWrites {
+    private static final Map<StorageIoWorker, Path> WORKERS = new ConcurrentHashMap<>();
+
+    private StorageWrites() {
+    }
+
+    public static void opened(StorageIoWorker worker, Path directory) {
+        WORKERS.put(worker, directory.toAbsolutePath().normalize());
+    }
+
+    public static void closed(StorageIoWorker worker) {
+        WORKERS.remove(worker);
+    }
+
+    /** Completes once every write queued so far for a world's folder is on disk. */
+    public static CompletableFuture<Void> completeAll(Path worldDir) {
+        Path root = worldDir.toAbsolutePath().normalize();
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (Map.Entry<StorageIoWorker, Path> entry : WORKERS.entrySet()) {
+            if (entry.getValue().startsWith(root)) {
+                // Without a sync to disk; the backup reads through the same page cache
+                pending.add(entry.getKey().completeAll(false));
+            }
+        }
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]));
+    }
+}
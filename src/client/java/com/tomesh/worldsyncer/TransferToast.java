@@ -0,0 +1,87 @@
+package com.tomesh.worldsyncer;
+
+import com.tomesh.worldsyncer.core.TransferMetrics;
+
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.toast.Toast;
+import net.minecraft.client.toast.ToastManager;
+import net.minecraft.text.Text;
+
+import java.util.List;
+
+/**
+ * Live progress of running backups and pulls: the oldest running operation
+ * with its current step, a progress bar, throughput and ETA. Stays up while
+ * anything is transferring and hides itself shortly after the last one ends.
+ */
+public class TransferToast implements Toast {
+    private static final Object TYPE = new Object();
+    private static final long LINGER_MILLIS = 1500;
+
+    private long idleSince = -1;
+
+    /** Shows the toast if an operation is running and it is not already up. */
+    public static void showIfActive(MinecraftClient client) {
+        ToastManager toasts = client.getToastManager();
+        if (toasts == null || TransferMetrics.active().isEmpty()
+                || toasts.getToast(TransferToast.class, TYPE) != null) {
+            return;
+        }
+        toasts.add(new TransferToast());
+    }
+
+    @Override
+    public Visibility draw(DrawContext context, ToastManager manager, long startTime) {
+        context.drawTexture(TEXTURE, 0, 0, 0, 32, getWidth(), getHeight());
+        TextRenderer textRenderer = manager.getClient().textRenderer;
+        List<TransferMetrics> active = TransferMetrics.active();
+        if (active.isEmpty()) {
+            if (idleSince < 0) {
+                idleSince = startTime;
+            }
+            context.drawText(textRenderer, Text.literal("World Saver: done"), 7, 7, 0xFF500050, false);
+            return startTime - idleSince < LINGER_MILLIS ? Visibility.SHOW : Visibility.HIDE;
+        }
+        idleSince = -1;
+        TransferMetrics current = active.get(0);
+        String title = current.getOperation() + " " + current.getWorldName();
+        if (active.size() > 1) {
+            title += " (+" + (active.size() - 1) + ")";
+        }
+        context.drawText(textRenderer, Text.literal(textRenderer.trimToWidth(title, getWidth() - 14)), 7, 7,
+                0xFF500050, false);
+        StringBuilder detail = new StringBuilder(current.getStatus());
+        long rate = current.getBytesPerSecond();
+        if (rate > 0) {
+            detail.append(" ").append(formatBytes(rate)).append("/s");
+        }
+        long eta = current.getEtaSeconds();
+        if (eta >= 0) {
+            detail.append(" ").append(eta / 60).append(':').append(String.format("%02d", eta % 60));
+        }
+        context.drawText(textRenderer, Text.literal(textRenderer.trimToWidth(detail.toString(), getWidth() - 14)), 7,
+                18, 0xFF000000, false);
+        float fraction = current.getFraction();
+        if (fraction >= 0) {
+            int left = 3;
+            int right = getWidth() - 3;
+            context.fill(left, 28, right, 29, 0xFFFFFFFF);
+            context.fill(left, 28, left + (int) ((right - left) * fraction), 29, 0xFF00AA00);
+        }
+        return Visibility.SHOW;
+    }
+
+    @Override
+    public Object getType() {
+        return TYPE;
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes >= 1024 * 1024) {
+            return String.format("%.1f MiB", bytes / (1024.0 * 1024.0));
+        }
+        return Math.max(1, bytes / 1024) + " KiB";
+    }
+}
@@ -5,6 +5,8 @@ import com.tomesh.worldsyncer.GithubBackupMod;
 import com.tomesh.worldsyncer.config.ModConfig;
 import com.tomesh.worldsyncer.config.ModConfig.WorldBackupEntry;
 import com.tomesh.worldsyncer.core.GithubService;
+import com.tomesh.worldsyncer.core.PushOutbox;
+import com.tomesh.worldsyncer.core.SyncScheduler;
 
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.client.gui.widget.ButtonWidget;
@@ -27,6 +29,8 @@ import java.util.Arrays;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 
 public class WorldBackupConfigScreen extends Screen {
@@ -57,22 +61,32 @@ public class WorldBackupConfigScreen extends Screen {
     private static final int BOTTOM_PADDING = 20;
     private int visibleEntries = 8;
     private String realToken = "";
+    private final Map<String, ButtonWidget> toggleByWorld = new HashMap<>();
+    private boolean remoteLoading = false;
+    // Progress of toggle jobs per world; static so it survives reopening the
+    // screen while a clone or push is still running
+    private static final Map<String, RowStatus> JOB_STATUS = new ConcurrentHashMap<>();
+
+    private static final class RowStatus {
+        final String text;
+        final boolean running;
+
+        RowStatus(String text, boolean running) {
+            this.text = text;
+            this.running = running;
+        }
+    }
 
     public WorldBackupConfigScreen(Screen parent) {
         super(Text.literal("World Saver Backup Config"));
         this.parent = parent;
-        // Clean up config of worlds not present locally or on GitHub
-        com.tomesh.worldsyncer.ClientInit.cleanConfigOfNonexistentWorlds();
-        // Fetch all possible worlds from GitHub and local saves
+        // The list opens from local saves and the config alone; GitHub repos are
+        // merged in (and stale config entries cleaned up) once the listing
+        // arrives, so opening the screen never waits on the network
         Map<String, String> lowerToRealName = new HashMap<>();
         // Add all local worlds (real folder names)
-        File savesDir = new File(MinecraftClient.getInstance().runDirectory, "saves");
-        if (savesDir.exists() && savesDir.isDirectory()) {
-            File[] worldDirs = Objects.requireNonNull(savesDir.listFiles(File::isDirectory));
-            for (File f : worldDirs) {
-                String realName = f.getName();
-                lowerToRealName.put(realName, realName);
-            }
+        for (String realName : listLocalWorlds()) {
+            lowerToRealName.put(realName, realName);
         }
         // Add all config worlds (only if not already present as a real folder)
         ModConfig config = me.shedaniel.autoconfig.AutoConfig.getConfigHolder(ModConfig.class).getConfig();
@@ -81,25 +95,68 @@ public class WorldBackupConfigScreen extends Screen {
                 lowerToRealName.put(configKey, configKey); // fallback to config key
             }
         }
-        // Add all remote worlds (only if not already present)
-        try {
-            Map<String, String> remoteWorlds = ClientInit.getGithubService().listMinecraftWorldRepos().get();
-            for (String remoteKey : remoteWorlds.keySet()) {
-                if (!lowerToRealName.containsKey(remoteKey)) {
-                    lowerToRealName.put(remoteKey, remoteKey);
-                }
-            }
-        } catch (Exception e) {
-            GithubBackupMod.LOGGER.error("Failed to fetch world repos for config UI: {}", e.getMessage());
-        }
         worldNames.addAll(new HashSet<>(lowerToRealName.values()));
         Collections.sort(worldNames);
         // Load current config
         for (String world : worldNames) {
-            String key = com.tomesh.worldsyncer.config.ModConfig.worldKey(world);
-            WorldBackupEntry entry = config.backedUpWorlds.getOrDefault(key, new WorldBackupEntry("", false));
-            backupEntries.put(world, entry);
-            backupEnabled.put(world, entry.enabled);
+            loadEntry(config, world);
+        }
+        GithubService service = ClientInit.getGithubService();
+        if (service != null) {
+            remoteLoading = true;
+            service.listMinecraftWorldRepos().whenComplete((remoteWorlds, ex) -> MinecraftClient.getInstance()
+                    .execute(() -> onRemoteWorlds(remoteWorlds, ex)));
+        }
+    }
+
+    private static Set<String> listLocalWorlds() {
+        Set<String> names = new HashSet<>();
+        File savesDir = new File(MinecraftClient.getInstance().runDirectory, "saves");
+        if (savesDir.exists() && savesDir.isDirectory()) {
+            File[] worldDirs = Objects.requireNonNull(savesDir.listFiles(File::isDirectory));
+            for (File f : worldDirs) {
+                names.add(f.getName());
+            }
+        }
+        return names;
+    }
+
+    private void loadEntry(ModConfig config, String world) {
+        String key = com.tomesh.worldsyncer.config.ModConfig.worldKey(world);
+        WorldBackupEntry entry = config.backedUpWorlds.getOrDefault(key, new WorldBackupEntry("", false));
+        backupEntries.put(world, entry);
+        backupEnabled.put(world, entry.enabled);
+    }
+
+    // Runs on the render thread once the GitHub listing is done
+    private void onRemoteWorlds(Map<String, String> remoteWorlds, Throwable ex) {
+        remoteLoading = false;
+        if (ex != null || remoteWorlds == null) {
+            GithubBackupMod.LOGGER.error("Failed to fetch world repos for config UI: {}",
+                    ex != null ? ex.getMessage() : "no result");
+            return;
+        }
+        // Clean up config of worlds not present locally or on GitHub
+        ClientInit.cleanConfigOfNonexistentWorlds(remoteWorlds.keySet());
+        Set<String> localWorlds = listLocalWorlds();
+        ModConfig config = me.shedaniel.autoconfig.AutoConfig.getConfigHolder(ModConfig.class).getConfig();
+        worldNames.removeIf(world -> !localWorlds.contains(world) && !remoteWorlds.containsKey(world)
+                && !JOB_STATUS.containsKey(world));
+        // Add all remote worlds (only if not already present)
+        for (String remoteKey : remoteWorlds.keySet()) {
+            if (!worldNames.contains(remoteKey)) {
+                worldNames.add(remoteKey);
+                loadEntry(config, remoteKey);
+            }
+        }
+        Collections.sort(worldNames);
+        scrollOffset = Math.max(0, Math.min(scrollOffset, worldNames.size() - visibleEntries));
+        if (this.client != null && this.client.currentScreen == this) {
+            // Keep whatever is being typed into the token field across the rebuild
+            if (this.tokenField != null && (tokenVisible || realToken.isEmpty())) {
+                realToken = this.tokenField.getText();
+            }
+            this.clearAndInit();
         }
     }
 
@@ -110,6 +167,7 @@ public class WorldBackupConfigScreen extends Screen {
             this.remove(btn);
         }
         this.toggleButtons.clear();
+        this.toggleByWorld.clear();
         this.repoFields.clear();
         // Calculate the vertical space above the world list
         int tokenSectionHeight = TOKEN_SECTION_HEIGHT;
@@ -198,95 +256,26 @@ public class WorldBackupConfigScreen extends Screen {
             ButtonWidget toggle = ButtonWidget.builder(
                     Text.literal(enabled ? "Backup: ON" : "Backup: OFF"),
                     btn -> {
+                        if (isJobRunning(world)) {
+                            return;
+                        }
                         boolean newState = !backupEnabled.getOrDefault(world, false);
                         backupEnabled.put(world, newState);
                         btn.setMessage(Text.literal(newState ? "Backup: ON" : "Backup: OFF"));
                         if (newState) {
-                            if (entry.repoFullName == null || entry.repoFullName.isEmpty()) {
-                                try {
-                                    String createdRepo = ClientInit.getGithubService()
-                                            .createPrivateRepoIfNotExists(world).get();
-                                    if (createdRepo != null && !createdRepo.isEmpty()) {
-                                        entry.repoFullName = createdRepo;
-                                    }
-                                } catch (Exception e) {
-                                    GithubBackupMod.LOGGER.error("Failed to create repo for world {}: {}", world,
-                                            e.getMessage());
-                                }
-                            }
-                            File savesDir = new File(MinecraftClient.getInstance().runDirectory, "saves");
-                            File worldDir = new File(savesDir, world);
-                            if (!worldDir.exists() && entry.repoFullName != null && !entry.repoFullName.isEmpty()) {
-                                try {
-                                    ClientInit.getGithubService().pullWorld(worldDir, entry.repoFullName).get();
-                                } catch (Exception e) {
-                                    GithubBackupMod.LOGGER.error("Failed to clone world {}: {}", world, e.getMessage());
-                                }
-                            }
-                            if (worldDir.exists() && entry.repoFullName != null && !entry.repoFullName.isEmpty()) {
-                                File[] files = worldDir.listFiles();
-                                boolean hasContent = false;
-                                if (files != null) {
-                                    for (File file : files) {
-                                        String name = file.getName();
-                                        if (!name.equals(".git") && !name.equals(".gitignore")) {
-                                            hasContent = true;
-                                            break;
-                                        }
-                                    }
-                                }
-                                if (hasContent) {
-                                    try {
-                                        ClientInit.getGithubService().backupWorld(worldDir, entry.repoFullName);
-                                    } catch (Exception e) {
-                                        GithubBackupMod.LOGGER.error("Failed to push world {} to GitHub: {}", world,
-                                                e.getMessage());
-                                    }
-                                } else {
-                                    if (MinecraftClient.getInstance().player != null) {
-                                        MinecraftClient.getInstance().player.sendMessage(
-                                                net.minecraft.text.Text.literal(
-                                                        "World folder is empty. Please load and save the world at least once before enabling backup.")
-                                                        .formatted(net.minecraft.util.Formatting.YELLOW),
-                                                false);
-                                    } else {
-                                        GithubBackupMod.LOGGER.warn(
-                                                "World folder '{}' is empty. Please load and save the world at least once before enabling backup.",
-                                                world);
-                                    }
-                                }
-                            }
+                            startEnableJob(world, entry);
                         } else {
-                            File savesDir = new File(MinecraftClient.getInstance().runDirectory, "saves");
-                            File worldDir = new File(savesDir, world);
-                            File gitDir = new File(worldDir, ".git");
-                            File gitignore = new File(worldDir, ".gitignore");
-                            File worldsave = new File(worldDir, ".worldsaver.json");
-                            if (gitDir.exists()) {
-                                try {
-                                    org.eclipse.jgit.api.Git git = org.eclipse.jgit.api.Git.open(gitDir);
-                                    git.close();
-                                } catch (Exception ignored) {
-                                }
-                                System.gc();
-                                try {
-                                    Thread.sleep(200);
-                                } catch (InterruptedException ignored) {
-                                }
-                                deleteDirectoryNio(gitDir.toPath());
-                            }
-                            if (gitignore.exists())
-                                gitignore.delete();
-                            if (worldsave.exists())
-                                worldsave.delete();
+                            startDisableJob(world);
                         }
                     })
                     .dimensions(toggleX, boxY, toggleWidth, 20)
                     .build();
             toggle.setTooltip(net.minecraft.client.gui.tooltip.Tooltip
                     .of(Text.literal("Enable or disable GitHub backup for this world.")));
+            toggle.active = !isJobRunning(world);
             this.addDrawableChild(toggle);
             toggleButtons.add(toggle);
+            toggleByWorld.put(world, toggle);
         }
         // Scroll buttons if needed
         if (worldNames.size() > visibleEntries) {
@@ -313,6 +302,114 @@ public class WorldBackupConfigScreen extends Screen {
         this.addDrawableChild(saveButton);
     }
 
+    // Creates the repo if needed, clones the world if it is missing locally and
+    // pushes it if it has content. Runs in the background; progress is shown on
+    // the world's row
+    private void startEnableJob(String world, WorldBackupEntry entry) {
+        JOB_STATUS.remove(world);
+        GithubService service = ClientInit.getGithubService();
+        if (service == null) {
+            JOB_STATUS.put(world, new RowStatus("Set an access token first", false));
+            return;
+        }
+        File savesDir = new File(MinecraftClient.getInstance().runDirectory, "saves");
+        File worldDir = new File(savesDir, world);
+        CompletableFuture<String> repo;
+        if (entry.repoFullName == null || entry.repoFullName.isEmpty()) {
+            JOB_STATUS.put(world, new RowStatus("Creating repo", true));
+            repo = service.createPrivateRepoIfNotExists(world);
+        } else {
+            repo = CompletableFuture.completedFuture(entry.repoFullName);
+        }
+        repo.thenCompose(createdRepo -> {
+            if (createdRepo != null && !createdRepo.isEmpty()) {
+                entry.repoFullName = createdRepo;
+            }
+            if (!worldDir.exists() && entry.repoFullName != null && !entry.repoFullName.isEmpty()) {
+                JOB_STATUS.put(world, new RowStatus("Cloning", true));
+                return service.pullWorld(worldDir, entry.repoFullName);
+            }
+            return CompletableFuture.<Void>completedFuture(null);
+        }).thenCompose(ignored -> {
+            if (!worldDir.exists() || entry.repoFullName == null || entry.repoFullName.isEmpty()) {
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            File[] files = worldDir.listFiles();
+            boolean hasContent = false;
+            if (files != null) {
+                for (File file : files) {
+                    String name = file.getName();
+                    if (!name.equals(".git") && !name.equals(".gitignore")) {
+                        hasContent = true;
+                        break;
+                    }
+                }
+            }
+            if (!hasContent) {
+                GithubBackupMod.LOGGER.warn(
+                        "World folder '{}' is empty. Please load and save the world at least once before enabling backup.",
+                        world);
+                JOB_STATUS.put(world, new RowStatus("Empty world, load it once first", false));
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            JOB_STATUS.put(world, new RowStatus("Backing up", true));
+            return service.backupWorld(worldDir, entry.repoFullName);
+        }).whenComplete((ignored, ex) -> finishJob(world, ex));
+    }
+
+    // Removes the world's .git/.gitignore on the world's sync queue, so it never
+    // races a backup that is still running
+    private void startDisableJob(String world) {
+        File savesDir = new File(MinecraftClient.getInstance().runDirectory, "saves");
+        File worldDir = new File(savesDir, world);
+        JOB_STATUS.put(world, new RowStatus("Removing local repo", true));
+        SyncScheduler.get().submit(ModConfig.worldKey(world), () -> {
+            File gitDir = new File(worldDir, ".git");
+            File gitignore = new File(worldDir, ".gitignore");
+            File worldsave = new File(worldDir, ".worldsaver.json");
+            if (gitDir.exists()) {
+                try {
+                    org.eclipse.jgit.api.Git git = org.eclipse.jgit.api.Git.open(gitDir);
+                    git.close();
+                } catch (Exception ignored) {
+                }
+                System.gc();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ignored) {
+                }
+                deleteDirectoryNio(gitDir.toPath());
+            }
+            if (gitignore.exists())
+                gitignore.delete();
+            if (worldsave.exists())
+                worldsave.delete();
+        }).whenComplete((ignored, ex) -> finishJob(world, ex));
+    }
+
+    private static void finishJob(String world, Throwable ex) {
+        if (ex != null) {
+            GithubBackupMod.LOGGER.error("Sync job for world {} failed: {}", world, ex.getMessage());
+            JOB_STATUS.put(world, new RowStatus("Failed, see log", false));
+            return;
+        }
+        // Keep messages that explain why nothing happened
+        JOB_STATUS.computeIfPresent(world, (key, status) -> status.running ? null : status);
+    }
+
+    private static boolean isJobRunning(String world) {
+        RowStatus status = JOB_STATUS.get(world);
+        return status != null && status.running;
+    }
+
+    @Override
+    public void tick() {
+        super.tick();
+        for (Map.Entry<String, ButtonWidget> toggle : toggleByWorld.entrySet()) {
+            toggle.getValue().active = !isJobRunning(toggle.getKey());
+        }
+    }
+
     private void saveAndClose() {
         // If the token field is currently editable, update realToken with the field's
         // text before saving
@@ -453,10 +550,71 @@ public class WorldBackupConfigScreen extends Screen {
             int nameX = pairStartX;
             context.drawTextWithShadow(this.textRenderer, Text.literal(worldNames.get(i)),
                     nameX, boxY + 6, 0xFFFFFF);
+            // Per-row job progress, or a generic indicator for jobs started elsewhere
+            // (e.g. the backup after leaving the world)
+            String world = worldNames.get(i);
+            RowStatus status = JOB_STATUS.get(world);
+            String dots = ".".repeat((int) (System.currentTimeMillis() / 400 % 4));
+            int statusX = nameX + nameWidth + pairSpacing + toggleWidth + 8;
+            if (status != null) {
+                context.drawTextWithShadow(this.textRenderer,
+                        Text.literal(status.running ? status.text + dots : status.text), statusX, boxY + 6,
+                        status.running ? 0xFFFF55 : 0xFF5555);
+            } else if (SyncScheduler.get().getQueueDepth(ModConfig.worldKey(world)) > 0) {
+                context.drawTextWithShadow(this.textRenderer, Text.literal("Syncing" + dots), statusX, boxY + 6,
+                        0xAAAAAA);
+            } else {
+                PushOutbox.Pending pending = PushOutbox.get().getPending(world);
+                if (pending != null) {
+                    long retryIn = Math.max(0, pending.nextAttempt - System.currentTimeMillis());
+                    context.drawTextWithShadow(this.textRenderer,
+                            Text.literal("Not uploaded for " + formatDuration(System.currentTimeMillis() - pending.since)
+                                    + ", retry in " + formatDuration(retryIn)),
+                            statusX, boxY + 6, 0xFFAA00);
+                } else {
+                    WorldBackupEntry entry = GithubBackupMod.getConfig().backedUpWorlds.get(ModConfig.worldKey(world));
+                    if (entry != null && entry.isSparse()) {
+                        context.drawTextWithShadow(this.textRenderer,
+                                Text.literal("Partial copy, without " + String.join(", ", entry.sparseExcludes)),
+                                statusX, boxY + 6, 0xAAAAAA);
+                    }
+                }
+            }
+        }
+        if (remoteLoading) {
+            Text loading = Text.literal("Loading GitHub repos...");
+            context.drawTextWithShadow(this.textRenderer, loading,
+                    this.width - SIDE_PADDING - 8 - this.textRenderer.getWidth(loading), worldHeaderY, 0xAAAAAA);
+        }
+        // Pending sync jobs (shown only while something is queued or running)
+        int queueDepth = SyncScheduler.get().getQueueDepth();
+        if (queueDepth > 0) {
+            context.drawTextWithShadow(this.textRenderer, Text.literal("Sync jobs pending: " + queueDepth),
+                    SIDE_PADDING, saveBtnY + 6, 0xAAAAAA);
+        }
+        // Failed uploads waiting for a retry, with how far the oldest lags behind
+        Map<String, PushOutbox.Pending> outbox = PushOutbox.get().getAllPending();
+        if (!outbox.isEmpty()) {
+            long oldest = outbox.values().stream().mapToLong(pending -> pending.since).min().getAsLong();
+            Text lag = Text.literal("Uploads pending: " + outbox.size() + " (oldest "
+                    + formatDuration(System.currentTimeMillis() - oldest) + ")");
+            context.drawTextWithShadow(this.textRenderer, lag,
+                    this.width - SIDE_PADDING - this.textRenderer.getWidth(lag), saveBtnY + 6, 0xFFAA00);
         }
         super.render(context, mouseX, mouseY, delta);
     }
 
+    private static String formatDuration(long millis) {
+        long seconds = millis / 1000;
+        if (seconds < 60) {
+            return seconds + "s";
+        }
+        if (seconds < 3600) {
+            return seconds / 60 + "m";
+        }
+        return seconds / 3600 + "h " + seconds % 3600 / 60 + "m";
+    }
+
     @Override
     public void close() {
         this.client.setScreen(parent);
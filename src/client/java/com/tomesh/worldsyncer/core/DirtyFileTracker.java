@@ -0,0 +1,322 @@
+package com.tomesh.worldsyncer.core;
+
+import com.tomesh.worldsyncer.GithubBackupMod;
+import com.tomesh.worldsyncer.config.ModConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the folder of a backed-up world while it is open and remembers
+ * every path the game wrote, created or deleted, so a backup only stats those
+ * (see {@link WorldStatCache#scan(File, java.util.Collection)}) instead of
+ * walking the whole save.
+ * <p>
+ * Changes made before the world was opened are found by one full scan in the
+ * background right after it loads. When the watch service drops events, the
+ * next backup scans everything again. Each path carries the sequence number of
+ * its last event; a backup only clears the paths it saw, so anything written
+ * while it ran stays dirty.
+ */
+public final class DirtyFileTracker {
+    // How long the watch service must stay quiet before a scan trusts the
+    // paths collected so far: events reach it from its own thread
+    private static final long QUIET_MILLIS = 100;
+    private static final long SYNC_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private static final Map<Path, DirtyFileTracker> ACTIVE = new ConcurrentHashMap<>();
+
+    private final Path root;
+    private final WatchService watcher;
+    private final Map<WatchKey, Path> folders = new HashMap<>();
+    // World-relative path -> sequence number of its last event
+    private final Map<String, Long> dirty = new HashMap<>();
+    private long sequence = 1;
+    // Sequence number after which a full scan is needed, -1 if none; the
+    // tracker starts out needing the one it does itself
+    private long fullScanSince = 0;
+    private long syncRequested;
+    private long synced;
+    private volatile boolean running = true;
+
+    private DirtyFileTracker(Path root, WatchService watcher) {
+        this.root = root;
+        this.watcher = watcher;
+    }
+
+    /** Starts tracking a world that was just opened, if it is backed up. */
+    public static void start(File worldDir) {
+        ModConfig config = GithubBackupMod.getConfig();
+        ModConfig.WorldBackupEntry entry = config == null ? null : config.getBackupEntry(worldDir.getName());
+        if (config == null || !config.watchWorldFiles || entry == null || !entry.enabled) {
+            return;
+        }
+        Path root = key(worldDir);
+        if (ACTIVE.containsKey(root)) {
+            return;
+        }
+        WatchService watcher;
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            GithubBackupMod.LOGGER.warn("Cannot watch {}, backups will scan it: {}", worldDir.getName(),
+                    e.getMessage());
+            return;
+        }
+        if (watcher.getClass().getSimpleName().contains("Polling")) {
+            // Without native events (e.g. on macOS) changes are only noticed
+            // seconds later, too late for the backup at shutdown
+            closeQuietly(watcher);
+            return;
+        }
+        DirtyFileTracker tracker = new DirtyFileTracker(root, watcher);
+        if (ACTIVE.putIfAbsent(root, tracker) != null) {
+            closeQuietly(watcher);
+            return;
+        }
+        Thread thread = new Thread(tracker::run, "WorldSyncer-Watch-" + worldDir.getName());
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /** Stops tracking a world, e.g. once it was closed and its last changes collected. */
+    public static void stop(File worldDir) {
+        DirtyFileTracker tracker = ACTIVE.remove(key(worldDir));
+        if (tracker != null) {
+            tracker.close();
+        }
+    }
+
+    /**
+     * Finds what changed in a world since its last backup: only the paths
+     * written since then if the world is tracked, else by a full scan.
+     */
+    public static WorldStatCache.ChangeSet scan(File worldDir) throws IOException {
+        WorldStatCache statCache = WorldStatCache.load(worldDir);
+        DirtyFileTracker tracker = ACTIVE.get(key(worldDir));
+        if (tracker == null || !tracker.sync()) {
+            return statCache.scan(worldDir);
+        }
+        long upTo;
+        Set<String> paths;
+        synchronized (tracker) {
+            upTo = tracker.sequence;
+            paths = tracker.fullScanSince >= 0 ? null : new HashSet<>(tracker.dirty.keySet());
+        }
+        WorldStatCache.ChangeSet changes = paths == null ? statCache.scan(worldDir) : statCache.scan(worldDir, paths);
+        changes.trackedUpTo = upTo;
+        if (paths != null) {
+            GithubBackupMod.LOGGER.info("Checked {} path(s) written in {} since its last backup", paths.size(),
+                    worldDir.getName());
+        }
+        return changes;
+    }
+
+    /**
+     * Forgets the paths a scan from {@link #scan} looked at, once its changes
+     * are committed and recorded in the stat cache.
+     */
+    public static void committed(File worldDir, WorldStatCache.ChangeSet changes) {
+        DirtyFileTracker tracker = ACTIVE.get(key(worldDir));
+        if (tracker == null || changes == null || changes.trackedUpTo < 0) {
+            return;
+        }
+        tracker.clean(changes.trackedUpTo);
+    }
+
+    private static Path key(File worldDir) {
+        return worldDir.toPath().toAbsolutePath().normalize();
+    }
+
+    private void run() {
+        try {
+            register(root);
+        } catch (IOException e) {
+            // Usually the limit on watched folders; a partly watched world
+            // would miss changes
+            GithubBackupMod.LOGGER.warn("Cannot watch {}, backups will scan it: {}", root.getFileName(),
+                    e.getMessage());
+            ACTIVE.remove(root, this);
+            close();
+            return;
+        }
+        Thread seed = new Thread(this::seed, "WorldSyncer-Watch-Scan-" + root.getFileName());
+        seed.setDaemon(true);
+        seed.setPriority(Thread.MIN_PRIORITY);
+        seed.start();
+        while (running) {
+            long request;
+            synchronized (this) {
+                request = syncRequested;
+            }
+            WatchKey key;
+            try {
+                key = watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+            synchronized (this) {
+                if (key == null) {
+                    synced = Math.max(synced, request);
+                    notifyAll();
+                } else {
+                    process(key);
+                }
+            }
+        }
+    }
+
+    // Compares the whole world with the stat cache once, for changes made
+    // while nobody was watching
+    private void seed() {
+        long from;
+        synchronized (this) {
+            from = sequence;
+        }
+        File worldDir = root.toFile();
+        WorldStatCache.ChangeSet changes;
+        try {
+            changes = WorldStatCache.load(worldDir).scan(worldDir);
+        } catch (IOException e) {
+            GithubBackupMod.LOGGER.warn("Initial scan of {} failed, the next backup scans it: {}",
+                    root.getFileName(), e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            long seq = ++sequence;
+            for (String path : changes.modified) {
+                dirty.put(path, seq);
+            }
+            for (String path : changes.removed) {
+                dirty.put(path, seq);
+            }
+            for (String path : changes.refreshed.keySet()) {
+                dirty.put(path, seq);
+            }
+            if (fullScanSince >= 0 && fullScanSince <= from) {
+                fullScanSince = -1;
+            }
+        }
+    }
+
+    // Called with the lock held
+    private void process(WatchKey key) {
+        Path folder = folders.get(key);
+        long seq = ++sequence;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || folder == null) {
+                fullScanSince = seq;
+                continue;
+            }
+            Path path = folder.resolve((Path) event.context());
+            String rel = root.relativize(path).toString().replace(File.separatorChar, '/');
+            if (rel.equals(".git") || rel.startsWith(".git/")) {
+                continue;
+            }
+            dirty.put(rel, seq);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                // Files created in it before it was watched are found when the
+                // scan walks the folder, which is dirty itself
+                try {
+                    register(path);
+                } catch (IOException e) {
+                    fullScanSince = seq;
+                }
+            }
+        }
+        if (!key.reset()) {
+            folders.remove(key);
+        }
+    }
+
+    private void register(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.equals(root.resolve(".git"))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                synchronized (DirtyFileTracker.this) {
+                    folders.put(key, dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // Waits until every event up to now has been collected. False if the
+    // watcher stopped or is stuck, in which case the caller scans everything
+    private synchronized boolean sync() {
+        long request = ++syncRequested;
+        long deadline = System.currentTimeMillis() + SYNC_TIMEOUT_MILLIS;
+        while (synced < request) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (!running || remaining <= 0) {
+                return false;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void clean(long upTo) {
+        Iterator<Long> it = dirty.values().iterator();
+        while (it.hasNext()) {
+            if (it.next() <= upTo) {
+                it.remove();
+            }
+        }
+        if (fullScanSince >= 0 && fullScanSince <= upTo) {
+            fullScanSince = -1;
+        }
+    }
+
+    private void close() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        closeQuietly(watcher);
+    }
+
+    private static void closeQuietly(WatchService watcher) {
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.tomesh.worldsyncer.core;
+
+import com.tomesh.worldsyncer.GithubBackupMod;
+import com.tomesh.worldsyncer.config.ModConfig;
+import com.tomesh.worldsyncer.config.ModConfig.WorldBackupEntry;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Backs up every world with pending work before the game exits, so pushes
+ * are not cut off by the JVM shutting down the daemon sync threads. Dirty
+ * worlds are found with {@link GithubService#needsBackup} and backed up in
+ * parallel on the shared {@link SyncScheduler}. A world with jobs already
+ * queued (e.g. the backup of the world that was just closed) waits for them
+ * and is only backed up again if they left changes behind.
+ */
+public class ExitFlush {
+    private final long startNanos = System.nanoTime();
+    private final long bytesSentAtStart = SyncMetrics.getBytesSent();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private volatile int total = -1;
+
+    private ExitFlush() {
+    }
+
+    /** Starts looking for dirty worlds in the background and backs them up. */
+    public static ExitFlush start(GithubService service) {
+        ExitFlush flush = new ExitFlush();
+        Thread thread = new Thread(() -> flush.run(service), "WorldSaver-ExitFlush");
+        thread.setDaemon(true);
+        thread.start();
+        return flush;
+    }
+
+    private void run(GithubService service) {
+        try {
+            ModConfig config = GithubBackupMod.getConfig();
+            SyncScheduler scheduler = SyncScheduler.get();
+            scheduler.setParallelism(Math.max(config.maxParallelSyncs, config.exitFlushWorkers));
+            List<CompletableFuture<Void>> jobs = new ArrayList<>();
+            for (Map.Entry<String, WorldBackupEntry> entry : config.backedUpWorlds.entrySet()) {
+                WorldBackupEntry backup = entry.getValue();
+                if (!backup.enabled || backup.repoFullName == null || !backup.repoFullName.contains("/")) {
+                    continue;
+                }
+                File worldDir = GithubService.getSavesDir().resolve(entry.getKey()).toFile();
+                if (!worldDir.isDirectory()) {
+                    continue;
+                }
+                CompletableFuture<Void> job;
+                String key = ModConfig.worldKey(entry.getKey());
+                if (scheduler.getQueueDepth(key) > 0) {
+                    job = scheduler.whenIdle(key).thenCompose(v -> service.needsBackup(worldDir)
+                            ? service.backupWorld(worldDir, backup.repoFullName)
+                            : CompletableFuture.completedFuture(null));
+                } else if (service.needsBackup(worldDir)) {
+                    job = service.backupWorld(worldDir, backup.repoFullName);
+                } else {
+                    continue;
+                }
+                jobs.add(job.whenComplete((v, ex) -> completed.incrementAndGet()));
+            }
+            total = jobs.size();
+            GithubBackupMod.LOGGER.info("Exit flush: backing up {} world(s)", total);
+            CompletableFuture.allOf(jobs.toArray(new CompletableFuture<?>[0])).handle((v, ex) -> null).join();
+        } catch (RuntimeException e) {
+            GithubBackupMod.LOGGER.error("Exit flush failed: {}", e.getMessage(), e);
+        } finally {
+            if (total < 0) {
+                total = 0;
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            GithubBackupMod.LOGGER.info("Exit flush: {} world(s) in {} ms, {} bytes sent ({} bytes/s)", total,
+                    millis, getBytesSent(), getBytesPerSecond());
+            done.complete(null);
+        }
+    }
+
+    public boolean isDone() {
+        return done.isDone();
+    }
+
+    /** Whether dirty worlds are still being looked for. */
+    public boolean isDiscovering() {
+        return total < 0;
+    }
+
+    /** Number of worlds being backed up, or -1 while still discovering. */
+    public int getTotal() {
+        return total;
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    /** Bytes uploaded by finished and running transfers since the flush began. */
+    public long getBytesSent() {
+        long sent = SyncMetrics.getBytesSent() - bytesSentAtStart;
+        for (TransferMetrics metrics : TransferMetrics.active()) {
+            sent += metrics.getBytesSent();
+        }
+        return sent;
+    }
+
+    /** Aggregate upload rate across all worlds since the flush began. */
+    public long getBytesPerSecond() {
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return millis <= 0 ? 0 : getBytesSent() * 1000 / millis;
+    }
+}
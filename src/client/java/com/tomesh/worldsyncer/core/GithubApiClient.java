@@ -0,0 +1,267 @@
+package com.tomesh.worldsyncer.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.tomesh.worldsyncer.GithubBackupMod;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * All calls to the GitHub REST and GraphQL APIs go through here. One client
+ * per token is shared by every backend instance, so the authenticated login
+ * is looked up once and cached GET responses are revalidated with their ETag
+ * (GitHub does not count a 304 against the rate limit).
+ * <p>
+ * The remaining quota is tracked from the rate limit headers of every
+ * response. Once it runs low, {@link Priority#BACKGROUND} requests are refused
+ * with a {@link DeferredException} before they are sent, and the rest of the
+ * budget is kept for requests the player is waiting on. Deferred requests are
+ * not queued here: the repo listing serves its cache and schedules a refresh
+ * for the reset, the remote head probe falls back to ls-remote over git.
+ */
+public class GithubApiClient {
+    public static final String API_URL = "https://api.github.com";
+    private static final String GRAPHQL_URL = API_URL + "/graphql";
+    // Share of each hourly limit only interactive requests may use
+    private static final int RESERVE_PERCENT = 10;
+    private static final int CACHE_ENTRIES = 256;
+
+    private static GithubApiClient shared;
+
+    public enum Priority {
+        /** The player is waiting on the result. */
+        INTERACTIVE,
+        /** Can be skipped or retried later, e.g. a scan at startup. */
+        BACKGROUND
+    }
+
+    /** A background request held back to save the remaining rate limit. */
+    public static class DeferredException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final long retryAtMillis;
+
+        DeferredException(String message, long retryAtMillis) {
+            super(message);
+            this.retryAtMillis = retryAtMillis;
+        }
+
+        /** When the rate limit resets and the request may be sent again. */
+        public long getRetryAtMillis() {
+            return retryAtMillis;
+        }
+    }
+
+    /** Status and body of a response; a revalidated cache entry reads as its original 200. */
+    public static final class Response {
+        public final int status;
+        public final String body;
+        public final HttpHeaders headers;
+
+        Response(int status, String body, HttpHeaders headers) {
+            this.status = status;
+            this.body = body;
+            this.headers = headers;
+        }
+
+        public JsonNode json() throws IOException {
+            return MAPPER.readTree(body);
+        }
+    }
+
+    private static final class Quota {
+        int limit;
+        int remaining;
+        long resetAtMillis;
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String token;
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final Map<String, Quota> quotas = new ConcurrentHashMap<>();
+    private final Map<String, Response> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Response> eldest) {
+            return size() > CACHE_ENTRIES;
+        }
+    };
+    private volatile String login;
+
+    private GithubApiClient(String token) {
+        this.token = token;
+    }
+
+    /** The shared client for a token; a new token gets a new client. */
+    public static synchronized GithubApiClient forToken(String token) {
+        if (shared == null || !shared.token.equals(token)) {
+            shared = new GithubApiClient(token);
+        }
+        return shared;
+    }
+
+    String token() {
+        return token;
+    }
+
+    /** Login of the token's account, looked up once per client. */
+    public String getLogin() throws IOException {
+        if (login == null) {
+            Response response = get("/user", Priority.INTERACTIVE);
+            if (response.status != 200) {
+                throw new IOException("GitHub returned HTTP " + response.status + " for the token's user");
+            }
+            login = response.json().path("login").asText();
+            GithubBackupMod.LOGGER.info("GitHub API connected as {}", login);
+        }
+        return login;
+    }
+
+    /** GET of an API path, revalidating an earlier response if there is one. */
+    public Response get(String path, Priority priority) throws IOException {
+        String url = API_URL + path;
+        Response cached;
+        synchronized (cache) {
+            cached = cache.get(url);
+        }
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url)).GET();
+        String etag = cached == null ? null : cached.headers.firstValue("ETag").orElse(null);
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        Response response = send(request, priority);
+        if (response.status == 304 && cached != null) {
+            return cached;
+        }
+        if (response.status == 200 && response.headers.firstValue("ETag").isPresent()) {
+            synchronized (cache) {
+                cache.put(url, response);
+            }
+        }
+        return response;
+    }
+
+    public Response post(String path, JsonNode body, Priority priority) throws IOException {
+        return send(HttpRequest.newBuilder(URI.create(API_URL + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(MAPPER.writeValueAsString(body))), priority);
+    }
+
+    public Response delete(String path, Priority priority) throws IOException {
+        return send(HttpRequest.newBuilder(URI.create(API_URL + path)).DELETE(), priority);
+    }
+
+    /**
+     * Runs a GraphQL query and returns its data. Errors for single fields
+     * (e.g. NOT_FOUND for a deleted repo) leave those fields null.
+     */
+    public JsonNode graphql(String query, Priority priority) throws IOException {
+        ObjectNode body = MAPPER.createObjectNode().put("query", query);
+        Response response = send(HttpRequest.newBuilder(URI.create(GRAPHQL_URL))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(MAPPER.writeValueAsString(body))), priority);
+        if (response.status != 200) {
+            throw new IOException("GitHub GraphQL returned HTTP " + response.status);
+        }
+        JsonNode result = response.json();
+        JsonNode data = result.path("data");
+        if (!data.isObject()) {
+            throw new IOException("GitHub GraphQL returned no data: " + result.path("errors"));
+        }
+        if (result.has("errors")) {
+            GithubBackupMod.LOGGER.debug("GitHub GraphQL reported errors: {}", result.get("errors"));
+        }
+        return data;
+    }
+
+    /**
+     * Sends a request with the token and API headers added, after checking the
+     * budget of its rate limit resource. Any URL of the API may be used, e.g.
+     * a pagination link.
+     */
+    public Response send(HttpRequest.Builder request, Priority priority) throws IOException {
+        HttpRequest built = request.timeout(Duration.ofSeconds(20))
+                .header("Authorization", "Bearer " + token)
+                .header("Accept", "application/vnd.github+json")
+                .build();
+        String resource = built.uri().toString().startsWith(GRAPHQL_URL) ? "graphql" : "core";
+        checkBudget(resource, priority);
+        HttpResponse<String> response;
+        try {
+            response = http.send(built, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calling GitHub", e);
+        }
+        Quota quota = recordQuota(resource, response);
+        if ((response.statusCode() == 403 || response.statusCode() == 429) && quota != null && quota.remaining == 0) {
+            throw new IOException("GitHub API rate limit reached until " + formatTime(quota.resetAtMillis));
+        }
+        return new Response(response.statusCode(), response.body(), response.headers());
+    }
+
+    private void checkBudget(String resource, Priority priority) throws IOException {
+        Quota quota = quotas.get(resource);
+        if (quota == null || System.currentTimeMillis() >= quota.resetAtMillis) {
+            return;
+        }
+        if (quota.remaining <= 0) {
+            if (priority == Priority.BACKGROUND) {
+                throw new DeferredException("GitHub API rate limit reached, deferred until "
+                        + formatTime(quota.resetAtMillis), quota.resetAtMillis);
+            }
+            throw new IOException("GitHub API rate limit reached until " + formatTime(quota.resetAtMillis));
+        }
+        if (priority == Priority.BACKGROUND && quota.remaining * 100 < quota.limit * RESERVE_PERCENT) {
+            throw new DeferredException("GitHub API budget low (" + quota.remaining + " of " + quota.limit
+                    + " left), deferred until " + formatTime(quota.resetAtMillis), quota.resetAtMillis);
+        }
+    }
+
+    // Secondary rate limits answer with Retry-After instead of a zero quota
+    private Quota recordQuota(String resource, HttpResponse<String> response) {
+        HttpHeaders headers = response.headers();
+        String headerResource = headers.firstValue("X-RateLimit-Resource").orElse(resource);
+        Quota quota = quotas.computeIfAbsent(headerResource, k -> new Quota());
+        synchronized (quota) {
+            try {
+                if (headers.firstValue("X-RateLimit-Remaining").isPresent()) {
+                    int before = quota.remaining;
+                    quota.limit = Integer.parseInt(headers.firstValue("X-RateLimit-Limit").orElse("0"));
+                    quota.remaining = Integer.parseInt(headers.firstValue("X-RateLimit-Remaining").get());
+                    quota.resetAtMillis = Long.parseLong(headers.firstValue("X-RateLimit-Reset").orElse("0")) * 1000;
+                    int reserve = quota.limit * RESERVE_PERCENT / 100;
+                    if (before >= reserve && quota.remaining < reserve) {
+                        GithubBackupMod.LOGGER.warn("GitHub {} API budget low: {} of {} left until {}",
+                                headerResource, quota.remaining, quota.limit, formatTime(quota.resetAtMillis));
+                    }
+                }
+                String retryAfter = headers.firstValue("Retry-After").orElse(null);
+                if (retryAfter != null && (response.statusCode() == 403 || response.statusCode() == 429)) {
+                    quota.remaining = 0;
+                    quota.resetAtMillis = System.currentTimeMillis() + Long.parseLong(retryAfter.trim()) * 1000;
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return quota;
+    }
+
+    private static String formatTime(long millis) {
+        return new SimpleDateFormat("HH:mm:ss").format(new Date(millis));
+    }
+}
@@ -0,0 +1,145 @@
+package com.tomesh.worldsyncer.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.tomesh.worldsyncer.GithubBackupMod;
+import com.tomesh.worldsyncer.config.ModConfig;
+
+import net.fabricmc.loader.api.FabricLoader;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * World repositories as private GitHub repos named
+ * {@code minecraft-world-<world>} in the token owner's account.
+ */
+public class GithubBackend implements SyncBackend {
+    // Shared by every instance; entries are keyed by account so a token change
+    // never sees another account's repos
+    private static RepoCatalog repoCatalog;
+
+    private final String accessToken;
+    private final RemoteHeadProbe remoteHeadProbe = new RemoteHeadProbe();
+
+    public GithubBackend(String accessToken) {
+        this.accessToken = accessToken;
+    }
+
+    @Override
+    public String getName() {
+        return "GitHub";
+    }
+
+    @Override
+    public String getSetupProblem() {
+        if (accessToken == null || accessToken.isEmpty()) {
+            return "Access token not configured in mod settings.";
+        }
+        return null;
+    }
+
+    // The login lookup doubles as the token check, and is only made once per
+    // token
+    @Override
+    public void connect() throws IOException {
+        api().getLogin();
+    }
+
+    @Override
+    public String createTarget(String worldName) throws IOException {
+        GithubApiClient api = api();
+        String repoName = repoName(worldName);
+        String fullRepoName = api.getLogin() + "/" + repoName;
+        GithubApiClient.Response existing = api.get("/repos/" + fullRepoName, GithubApiClient.Priority.INTERACTIVE);
+        if (existing.status == 200) {
+            GithubBackupMod.LOGGER.info("Repository {} already exists.", fullRepoName);
+            return existing.json().path("full_name").asText(fullRepoName);
+        }
+        if (existing.status != 404) {
+            throw new IOException("GitHub returned HTTP " + existing.status + " looking up " + fullRepoName);
+        }
+        GithubBackupMod.LOGGER.info("Repository {} does not exist yet, attempting to create.", fullRepoName);
+        ObjectNode request = new ObjectMapper().createObjectNode()
+                .put("name", repoName)
+                .put("description", "Automated backup for Minecraft world: " + worldName)
+                .put("private", true)
+                .put("auto_init", false);
+        GithubApiClient.Response response = api.post("/user/repos", request, GithubApiClient.Priority.INTERACTIVE);
+        if (response.status != 201) {
+            throw new IOException("GitHub returned HTTP " + response.status + " creating " + repoName + ": "
+                    + errorMessage(response));
+        }
+        String created = response.json().path("full_name").asText(fullRepoName);
+        getRepoCatalog().recordCreated(accessToken, worldName, created);
+        GithubBackupMod.LOGGER.info("Successfully created private GitHub repository: {}", created);
+        return created;
+    }
+
+    @Override
+    public Map<String, String> listTargets() throws IOException {
+        ModConfig config = GithubBackupMod.getConfig();
+        long ttlMillis = TimeUnit.MINUTES.toMillis(config != null ? config.repoListCacheMinutes : 10);
+        return getRepoCatalog().list(api(), ttlMillis);
+    }
+
+    @Override
+    public void deleteTarget(String target) throws IOException {
+        // Needs the delete_repo scope on the token
+        GithubApiClient.Response response = api().delete("/repos/" + target, GithubApiClient.Priority.INTERACTIVE);
+        if (response.status != 204) {
+            throw new IOException("GitHub returned HTTP " + response.status + " deleting " + target + ": "
+                    + errorMessage(response));
+        }
+    }
+
+    @Override
+    public String remoteUrl(String target) {
+        return "https://github.com/" + target + ".git";
+    }
+
+    @Override
+    public CredentialsProvider credentials() {
+        return new UsernamePasswordCredentialsProvider(accessToken, "");
+    }
+
+    @Override
+    public Map<String, String> probeHeads(Map<String, String> targets) throws IOException {
+        return remoteHeadProbe.probe(api(), targets);
+    }
+
+    static String repoName(String worldName) {
+        String repoName = RepoCatalog.REPO_PREFIX + worldName.replace(' ', '-');
+        if (repoName.length() > 100) {
+            repoName = repoName.substring(0, 100);
+        }
+        if (repoName.equals(RepoCatalog.REPO_PREFIX)) {
+            repoName = RepoCatalog.REPO_PREFIX + "unnamed-" + System.currentTimeMillis() % 10000;
+        }
+        return repoName;
+    }
+
+    private GithubApiClient api() {
+        return GithubApiClient.forToken(accessToken);
+    }
+
+    private static String errorMessage(GithubApiClient.Response response) {
+        try {
+            JsonNode message = response.json().path("message");
+            return message.isTextual() ? message.asText() : response.body;
+        } catch (IOException e) {
+            return response.body;
+        }
+    }
+
+    private static synchronized RepoCatalog getRepoCatalog() {
+        if (repoCatalog == null) {
+            repoCatalog = new RepoCatalog(FabricLoader.getInstance().getConfigDir().resolve("world-syncer-repos.json"));
+        }
+        return repoCatalog;
+    }
+}
@@ -3,87 +3,101 @@ package com.tomesh.worldsyncer.core; // Assuming your package is com.tomesh.worl
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
+import org.eclipse.jgit.api.CloneCommand;
+import org.eclipse.jgit.api.FetchCommand;
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.PullResult;
 import org.eclipse.jgit.api.PushCommand;
 import org.eclipse.jgit.api.errors.EmptyCommitException;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.api.errors.TransportException;
+import org.eclipse.jgit.errors.NoRemoteRepositoryException;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.FilterSpec;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
 import org.eclipse.jgit.transport.URIish; // Import URIish
-import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
-import org.kohsuke.github.GHCreateRepositoryBuilder;
-import org.kohsuke.github.GHRepository;
-import org.kohsuke.github.GitHub;
-import org.kohsuke.github.GitHubBuilder;
-import org.kohsuke.github.HttpException;
 
 import com.tomesh.worldsyncer.GithubBackupMod;
+import com.tomesh.worldsyncer.config.ModConfig;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.net.URISyntaxException; // Import URISyntaxException
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class GithubService {
-    private String accessToken;
-    private GitHub github;
+    static final String DEFAULT_GITIGNORE = "session.lock\nlogs/\ncrash-reports/\n*.tmp\nicon.png\nlevel.dat_old\nplayerdata/*.dat_old\nadvancements/*.json_old\n";
 
-    public GithubService(String token) {
-        this.accessToken = token;
-        if (token != null && !token.isEmpty()) {
-            try {
-                this.github = new GitHubBuilder().withOAuthToken(token).build();
-                this.github.checkApiUrlValidity();
-                GithubBackupMod.LOGGER.info("GitHub connection established with API.");
-            } catch (IOException e) {
-                GithubBackupMod.LOGGER.error("Failed to connect to GitHub with token: {}", e.getMessage());
-                this.github = null;
-                sendClientMessageAsync(
-                        Text.literal("GitHub Backup: Failed to connect to GitHub API. Check token & internet.")
-                                .formatted(Formatting.RED));
-            }
-        } else {
-            this.github = null;
-            GithubBackupMod.LOGGER.warn("GitHub access token is not set. Backups will not function.");
+    private static final long MIN_CHECKPOINT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // Upper bound for the files committed and pushed in one go
+    private static final long UPLOAD_BATCH_BYTES = 200L * 1024 * 1024;
+    // Where the batches of an upload go until the last one moves main, and the
+    // file in .git that says main locally holds only some of them
+    private static final String UPLOAD_REF = "refs/worldsyncer/upload";
+    private static final String UPLOAD_MARKER = "worldsyncer-upload";
+
+    private final SyncBackend backend;
+    private final SyncScheduler scheduler = SyncScheduler.get();
+    // Per world, when the last autosave checkpoint was queued and the last push
+    // succeeded this session
+    private final Map<String, Long> lastCheckpoint = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastPush = new ConcurrentHashMap<>();
+
+    public GithubService(SyncBackend backend) {
+        this.backend = backend;
+        String problem = backend.getSetupProblem();
+        if (problem != null) {
+            GithubBackupMod.LOGGER.warn("{} backend is not set up ({}). Backups will not function.",
+                    backend.getName(), problem);
+            return;
+        }
+        try {
+            backend.connect();
+        } catch (IOException e) {
+            GithubBackupMod.LOGGER.error("Failed to connect to {}: {}", backend.getName(), e.getMessage());
+            sendClientMessageAsync(Text.literal("GitHub Backup: Failed to connect to " + backend.getName()
+                    + ". Check settings & internet.").formatted(Formatting.RED));
         }
     }
 
+    public SyncBackend getBackend() {
+        return backend;
+    }
+
     private boolean isConfigured() {
-        if (this.accessToken == null || this.accessToken.isEmpty()) {
-            sendClientMessageAsync(Text.literal("GitHub Backup: Access token not configured in mod settings.")
-                    .formatted(Formatting.RED));
+        String problem = backend.getSetupProblem();
+        if (problem != null) {
+            sendClientMessageAsync(Text.literal("GitHub Backup: " + problem).formatted(Formatting.RED));
             return false;
         }
-        if (this.github == null) {
-            if (this.accessToken != null && !this.accessToken.isEmpty()) {
-                try {
-                    this.github = new GitHubBuilder().withOAuthToken(this.accessToken).build();
-                    this.github.checkApiUrlValidity();
-                    GithubBackupMod.LOGGER.info("GitHub connection re-established.");
-                } catch (IOException e) {
-                    GithubBackupMod.LOGGER.error("Failed to re-connect to GitHub with token: {}", e.getMessage());
-                    this.github = null;
-                    sendClientMessageAsync(
-                            Text.literal("GitHub Backup: GitHub connection not initialized. Check token & logs.")
-                                    .formatted(Formatting.RED));
-                    return false;
-                }
-            } else {
-                sendClientMessageAsync(
-                        Text.literal("GitHub Backup: GitHub connection not initialized and no token. Check logs.")
-                                .formatted(Formatting.RED));
-                return false;
-            }
+        try {
+            backend.connect();
+        } catch (IOException e) {
+            GithubBackupMod.LOGGER.error("Failed to re-connect to {}: {}", backend.getName(), e.getMessage());
+            sendClientMessageAsync(Text.literal("GitHub Backup: " + backend.getName()
+                    + " connection not initialized. Check settings & logs.").formatted(Formatting.RED));
+            return false;
         }
         return true;
     }
@@ -104,207 +118,679 @@ public class GithubService {
     }
 
     public CompletableFuture<String> createPrivateRepoIfNotExists(String worldName) {
-        return CompletableFuture.supplyAsync(() -> {
-            if (!isConfigured()) {
-                sendClientMessageAsync(
-                        Text.literal("Cannot create repo: GitHub service not configured.").formatted(Formatting.RED));
-                return null;
-            }
-            String repoName = "minecraft-world-" + worldName.replace(' ', '-');
-            if (repoName.length() > 100) {
-                repoName = repoName.substring(0, 100);
-            }
-            if (repoName.isEmpty() || repoName.equals("minecraft-world-")) {
-                repoName = "minecraft-world-unnamed-" + System.currentTimeMillis() % 10000;
+        return scheduler.submit(ModConfig.worldKey(worldName), () -> createRepo(worldName));
+    }
+
+    // Runs on the caller's thread; callers already holding the world's sync slot
+    // must use this instead of createPrivateRepoIfNotExists to avoid waiting on
+    // themselves
+    private String createRepo(String worldName) {
+        if (!isConfigured()) {
+            sendClientMessageAsync(
+                    Text.literal("Cannot create repo: GitHub service not configured.").formatted(Formatting.RED));
+            return null;
+        }
+        try {
+            String target = backend.createTarget(worldName);
+            sendClientMessageAsync(Text.literal("Backing up " + worldName + " to " + backend.getName() + " repo "
+                    + target).formatted(Formatting.GREEN));
+            return target;
+        } catch (IOException e) {
+            GithubBackupMod.LOGGER.error("Failed to create/check {} repository for {}: {}", backend.getName(),
+                    worldName, e.getMessage(), e);
+            sendClientMessageAsync(Text.literal("Failed to create repo for " + worldName + ". Error: "
+                    + String.valueOf(e.getMessage()).split("\n")[0]).formatted(Formatting.RED));
+            return null;
+        }
+    }
+
+    public CompletableFuture<Void> backupWorld(File worldDir, String repoFullName) {
+        return scheduler.submit(ModConfig.worldKey(worldDir.getName()), () -> {
+            runBackup(worldDir, worldDir, null, repoFullName);
+        });
+    }
+
+    /**
+     * Commits and pushes from a snapshot taken with {@link WorldSnapshot#create}
+     * instead of the live world folder. The snapshot is discarded afterwards.
+     */
+    public CompletableFuture<Void> backupSnapshot(WorldSnapshot snapshot, String repoFullName) {
+        File worldDir = snapshot.getWorldDir();
+        return scheduler.submit(ModConfig.worldKey(worldDir.getName()), () -> {
+            try {
+                snapshot.awaitCopied();
+                runBackup(worldDir, snapshot.getStagingDir(), snapshot.getChanges(), repoFullName);
+            } catch (IOException e) {
+                GithubBackupMod.LOGGER.error("Backup of {} skipped, its snapshot is incomplete: {}",
+                        worldDir.getName(), e.getMessage());
+                sendClientMessageAsync(Text.literal("Backup FAILED for " + worldDir.getName()
+                        + ": could not copy its files. They are backed up next time.").formatted(Formatting.RED));
+            } finally {
+                snapshot.discard();
             }
+        });
+    }
+
+    /**
+     * Commits what changed since the last backup of a world that is still being
+     * played, right after the game autosaved it. The commit stays local unless
+     * the last push is older than the configured push interval; the backup at
+     * shutdown pushes whatever is left. Returns null if a checkpoint was made
+     * too recently or the world's queue is busy.
+     */
+    public CompletableFuture<Void> checkpointWorld(File worldDir, String repoFullName) {
+        String key = ModConfig.worldKey(worldDir.getName());
+        long now = System.currentTimeMillis();
+        Long last = lastCheckpoint.get(key);
+        // Pausing also saves the world; don't commit for every pause
+        if (last != null && now - last < MIN_CHECKPOINT_INTERVAL_MILLIS || scheduler.getQueueDepth(key) > 0) {
+            return null;
+        }
+        lastCheckpoint.put(key, now);
+        return scheduler.submit(key, () -> {
+            Thread thread = Thread.currentThread();
+            int priority = thread.getPriority();
+            // The game is running; stay out of its way
+            thread.setPriority(Thread.MIN_PRIORITY);
+            WorldSnapshot snapshot = null;
             try {
-                String ownerLogin = github.getMyself().getLogin();
-                String fullRepoName = ownerLogin + "/" + repoName;
-                try {
-                    GHRepository existingRepo = github.getRepository(fullRepoName);
-                    if (existingRepo != null) {
-                        GithubBackupMod.LOGGER.info("Repository {} already exists.", fullRepoName);
-                        sendClientMessageAsync(
-                                Text.literal("Repo " + repoName + " already exists.").formatted(Formatting.YELLOW));
-                        return existingRepo.getFullName();
-                    }
-                } catch (org.kohsuke.github.GHFileNotFoundException e) {
-                    GithubBackupMod.LOGGER.info("Repository {} does not exist yet, attempting to create.",
-                            fullRepoName);
-                    // Repo does not exist, create it
-                    try {
-                        GHCreateRepositoryBuilder builder = github.createRepository(repoName)
-                                .description("Automated backup for Minecraft world: " + worldName)
-                                .private_(true).autoInit(false);
-                        String createdRepoFullName = builder.create().getFullName();
-                        GithubBackupMod.LOGGER.info("Successfully created private GitHub repository: {}",
-                                createdRepoFullName);
-                        sendClientMessageAsync(Text.literal("Created GitHub repo: " + createdRepoFullName)
-                                .formatted(Formatting.GREEN));
-                        return createdRepoFullName;
-                    } catch (Exception ce) {
-                        GithubBackupMod.LOGGER.error("Failed to create GitHub repository {}: {}", repoName,
-                                ce.getMessage(), ce);
-                        sendClientMessageAsync(Text.literal(
-                                "Failed to create repo " + repoName + ". Error: " + ce.getMessage().split("\n")[0])
-                                .formatted(Formatting.RED));
-                        return null;
-                    }
+                // The snapshot copies the changed files in one quick pass, so the
+                // game's next writes can't tear the slower hashing below. A file
+                // written mid-copy has a newer mtime and is picked up next time.
+                if (LazyRestore.isIncomplete(worldDir)) {
+                    // See runBackup; the backup at shutdown tells the player
+                    return;
+                }
+                WorldStatCache.ChangeSet changes = DirtyFileTracker.scan(worldDir);
+                if (changes.isInitial()) {
+                    // The first backup commits the whole world; leave it to shutdown
+                    return;
                 }
-                // If we get here, repo exists
-                return fullRepoName;
+                snapshot = WorldSnapshot.create(worldDir, getStagingDir().toFile(), changes);
+                runBackup(worldDir, snapshot.getStagingDir(), changes, repoFullName, true);
             } catch (IOException e) {
-                GithubBackupMod.LOGGER.error("Failed to create/check GitHub repository {}: {}", repoName,
-                        e.getMessage(), e);
-                sendClientMessageAsync(
-                        Text.literal("Failed to create repo " + repoName + ". Error: " + e.getMessage().split("\n")[0])
-                                .formatted(Formatting.RED));
-                return null;
+                GithubBackupMod.LOGGER.warn("Autosave backup of {} failed: {}", worldDir.getName(), e.getMessage());
+            } finally {
+                if (snapshot != null) {
+                    snapshot.discard();
+                }
+                thread.setPriority(priority);
             }
-        }, CompletableFuture.delayedExecutor(100, java.util.concurrent.TimeUnit.MILLISECONDS));
+        });
     }
 
-    public CompletableFuture<Void> backupWorld(File worldDir, String repoFullName) {
-        return CompletableFuture.runAsync(() -> {
-            if (!isConfigured() || repoFullName == null || repoFullName.isEmpty()) {
-                sendClientMessageAsync(
-                        Text.literal("Backup skipped for " + worldDir.getName() + ": Not configured or no repo name.")
-                                .formatted(Formatting.YELLOW));
-                return;
+    private void runBackup(File worldDir, File workTree, WorldStatCache.ChangeSet changes, String repoFullName) {
+        runBackup(worldDir, workTree, changes, repoFullName, false);
+    }
+
+    // worldDir holds the .git, workTree holds the files to commit (the world
+    // itself or a snapshot of it). changes may be null, in which case workTree is
+    // scanned against the world's stat cache here. A checkpoint commits quietly
+    // and only pushes when the push interval has passed.
+    private void runBackup(File worldDir, File workTree, WorldStatCache.ChangeSet changes, String repoFullName,
+            boolean checkpoint) {
+        boolean fromSnapshot = !workTree.equals(worldDir);
+        String key = ModConfig.worldKey(worldDir.getName());
+        if (!isConfigured() || repoFullName == null || repoFullName.isEmpty()) {
+            sendClientMessageAsync(
+                    Text.literal("Backup skipped for " + worldDir.getName() + ": Not configured or no repo name.")
+                            .formatted(Formatting.YELLOW));
+            return;
+        }
+        if (LazyRestore.isIncomplete(worldDir)) {
+            // A restore that gave up left regions missing, and the game may have
+            // generated new terrain in their place; committing that would
+            // replace the real regions in the backup
+            GithubBackupMod.LOGGER.warn("Not backing up {}: its restore has not finished", worldDir.getName());
+            if (!checkpoint) {
+                sendClientMessageAsync(Text.literal("Backup skipped for " + worldDir.getName()
+                        + ": its download has not finished. It continues on the next start.")
+                        .formatted(Formatting.YELLOW));
             }
+            return;
+        }
+        if (!checkpoint) {
             sendClientMessageAsync(Text.literal("Starting backup for " + worldDir.getName() + " to " + repoFullName)
                     .formatted(Formatting.AQUA));
-            File gitDir = new File(worldDir, ".git");
-            String remoteUrl = "https://github.com/" + repoFullName + ".git";
-            Git git = null;
-            try {
-                if (!gitDir.exists() || !new File(gitDir, "config").exists()) {
-                    GithubBackupMod.LOGGER.info("Initializing new Git repository in {}", worldDir.getAbsolutePath());
-                    if (gitDir.exists()) {
-                        deleteDirectory(gitDir);
-                    }
-                    git = Git.init().setDirectory(worldDir).setInitialBranch("main").call();
+        }
+        File gitDir = new File(worldDir, ".git");
+        String remoteUrl = backend.remoteUrl(repoFullName);
+        Git git = null;
+        TransferMetrics metrics = TransferMetrics.start(checkpoint ? "checkpoint" : "backup", worldDir.getName());
+        boolean succeeded = false;
+        try {
+            boolean freshRepo = !gitDir.exists() || !new File(gitDir, "config").exists();
+            if (freshRepo) {
+                GithubBackupMod.LOGGER.info("Initializing new Git repository in {}", worldDir.getAbsolutePath());
+                if (gitDir.exists()) {
+                    deleteDirectory(gitDir);
+                }
+                Git.init().setDirectory(worldDir).setInitialBranch("main").call().close();
+            }
+            if (freshRepo && changes != null && !changes.isInitial()) {
+                // The snapshot only holds what changed since a repository we just
+                // discarded; commit the live world in full instead
+                workTree = worldDir;
+                fromSnapshot = false;
+                changes = null;
+            }
+            if (writeSparseProfile(worldDir) && !freshRepo) {
+                LazyRestore.markIncomplete(worldDir);
+                // Queued after this backup, so the next one is not refused
+                resumeRestore(worldDir);
+            }
+            metrics.phase("scan");
+            WorldStatCache statCache = WorldStatCache.load(worldDir);
+            if (changes == null) {
+                changes = statCache.scan(workTree);
+            }
+            git = openWithWorkTree(gitDir, workTree);
+            if (freshRepo) {
+                git.remoteAdd().setName("origin").setUri(new URIish(remoteUrl)).call();
+                GithubBackupMod.LOGGER.info("Added remote origin: {}", remoteUrl);
+                writeGitignore(workTree);
+                if (fromSnapshot) {
+                    writeGitignore(worldDir);
+                }
+            } else {
+                var remotes = git.remoteList().call();
+                boolean originExists = remotes.stream().anyMatch(r -> r.getName().equals("origin"));
+                if (!originExists) {
                     git.remoteAdd().setName("origin").setUri(new URIish(remoteUrl)).call();
-                    GithubBackupMod.LOGGER.info("Added remote origin: {}", remoteUrl);
-                    File gitignore = new File(worldDir, ".gitignore");
-                    if (!gitignore.exists()) {
-                        try (FileWriter writer = new FileWriter(gitignore)) {
-                            writer.write(
-                                    "session.lock\nlogs/\ncrash-reports/\n*.tmp\nicon.png\nlevel.dat_old\nplayerdata/*.dat_old\nadvancements/*.json_old\n");
-                            GithubBackupMod.LOGGER.info("Created .gitignore in {}", worldDir.getAbsolutePath());
-                        } catch (IOException e) {
-                            GithubBackupMod.LOGGER.warn("Could not create .gitignore: {}", e.getMessage());
-                        }
-                    }
-                    // Stage all files and make initial commit if HEAD does not exist
-                    git.add().addFilepattern(".").call();
-                    if (git.getRepository().resolve(org.eclipse.jgit.lib.Constants.HEAD) == null) {
-                        git.commit().setMessage("Initial commit").setAuthor("Minecraft Backup Mod", "backup@mod.local")
-                                .call();
-                    }
-                } else {
-                    git = Git.open(worldDir);
-                    var remotes = git.remoteList().call();
-                    boolean originExists = remotes.stream().anyMatch(r -> r.getName().equals("origin"));
-                    if (!originExists) {
-                        git.remoteAdd().setName("origin").setUri(new URIish(remoteUrl)).call();
-                        GithubBackupMod.LOGGER.info("Added missing remote origin: {}", remoteUrl);
-                    } else if (remotes.stream().anyMatch(
-                            r -> r.getName().equals("origin") && !r.getURIs().get(0).toString().equals(remoteUrl))) {
-                        git.remoteSetUrl().setRemoteName("origin").setRemoteUri(new URIish(remoteUrl)).call();
-                        GithubBackupMod.LOGGER.info("Updated remote origin URL to: {}", remoteUrl);
+                    GithubBackupMod.LOGGER.info("Added missing remote origin: {}", remoteUrl);
+                } else if (remotes.stream().anyMatch(
+                        r -> r.getName().equals("origin") && !r.getURIs().get(0).toString().equals(remoteUrl))) {
+                    git.remoteSetUrl().setRemoteName("origin").setRemoteUri(new URIish(remoteUrl)).call();
+                    GithubBackupMod.LOGGER.info("Updated remote origin URL to: {}", remoteUrl);
+                }
+                // Write .worldsyncer.json with real world name
+                writeWorldMetadata(worldDir, workTree);
+            }
+            // A large upload (typically the first backup of an existing world) is
+            // committed and pushed in bounded batches. Each pushed batch is recorded
+            // in the stat cache, so an interrupted upload resumes after the last one,
+            // also when an autosave picks it up. Batches go to a side ref; main only
+            // moves once the world is complete
+            List<WorldStatCache.ChangeSet> batches = changes.split(UPLOAD_BATCH_BYTES);
+            File uploadMarker = new File(gitDir, UPLOAD_MARKER);
+            if (batches.size() > 1) {
+                GithubBackupMod.LOGGER.info("Uploading {} in {} batches", worldDir.getName(), batches.size());
+                if (uploadMarker.exists() && hasUnpushedCommits(git.getRepository())) {
+                    // The last batch of an interrupted upload was committed but not pushed
+                    metrics.phase("upload");
+                    push(git, metrics, true);
+                }
+                Files.writeString(uploadMarker.toPath(), "", StandardCharsets.UTF_8);
+            }
+            boolean committed = false;
+            for (int i = 0; i < batches.size(); i++) {
+                WorldStatCache.ChangeSet batch = batches.get(i);
+                ObjectId head = git.getRepository().resolve(Constants.HEAD);
+                if (!batch.isEmpty() || head == null) {
+                    // Only the paths the scan flagged are handed to JGit, so nothing
+                    // else in the save is walked or rehashed
+                    GithubBackupMod.LOGGER.info("Staging {} changed and {} removed file(s) for {}",
+                            batch.modified.size(), batch.removed.size(), worldDir.getName());
+                    metrics.phase("stage");
+                    WorldStager.stage(git, workTree, batch, List.of(".gitignore", ".worldsyncer.json"));
+                    String commitMessage = head == null ? "Initial commit"
+                            : (checkpoint ? "Autosave backup: " : "Automated backup: ")
+                                    + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+                    if (batches.size() > 1) {
+                        commitMessage += " (part " + (i + 1) + " of " + batches.size() + ")";
                     }
-                    // Write .worldsyncer.json with real world name
-                    File meta = new File(worldDir, ".worldsyncer.json");
-                    try (FileWriter writer = new FileWriter(meta)) {
-                        String canonicalName = worldDir.getCanonicalFile().getName();
-                        writer.write("{\"realWorldName\":\"" + canonicalName.replace("\"", "\\\"") + "\"}");
-                    } catch (IOException e) {
-                        GithubBackupMod.LOGGER.warn("Could not write .worldsyncer.json: {}", e.getMessage());
+                    GithubBackupMod.LOGGER.info("Committing changes with message: \"{}\"", commitMessage);
+                    metrics.phase("commit");
+                    try {
+                        git.commit().setMessage(commitMessage).setAuthor("Minecraft Backup Mod", "backup@mod.local")
+                                .setAllowEmpty(false).call();
+                        committed = true;
+                    } catch (EmptyCommitException e) {
+                        // Nothing to commit after all
                     }
                 }
-                GithubBackupMod.LOGGER.info("Staging changes for {}", worldDir.getName());
-                git.add().addFilepattern(".").call();
-                ObjectId head = git.getRepository().resolve(Constants.HEAD);
-                if (git.status().call().isClean() && head != null) {
-                    GithubBackupMod.LOGGER.info("No changes to commit for {}.", worldDir.getName());
-                    sendClientMessageAsync(
-                            Text.literal("No changes to backup for " + worldDir.getName()).formatted(Formatting.GRAY));
-                    // git.close(); // Closed in finally
-                    return;
+                statCache.apply(batch, git.getRepository().readDirCache());
+                statCache.save();
+                if (i < batches.size() - 1) {
+                    // The last batch is pushed below like any other backup
+                    metrics.phase("upload");
+                    push(git, metrics, true);
+                    sendClientMessageAsync(Text.literal("Uploaded part " + (i + 1) + " of " + batches.size()
+                            + " for " + worldDir.getName()).formatted(Formatting.GRAY));
                 }
-                String commitMessage = "Automated backup: "
-                        + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
-                GithubBackupMod.LOGGER.info("Committing changes with message: \"{}\"", commitMessage);
-                try {
-                    git.commit().setMessage(commitMessage).setAuthor("Minecraft Backup Mod", "backup@mod.local").call();
-                } catch (EmptyCommitException e) {
-                    GithubBackupMod.LOGGER.info("No changes to commit for {}.", worldDir.getName());
+            }
+            // main holds the whole world again
+            Files.deleteIfExists(uploadMarker.toPath());
+            DirtyFileTracker.committed(worldDir, changes);
+            if (checkpoint && !isPushDue(key)) {
+                GithubBackupMod.LOGGER.info("{} autosave backup of {}; push deferred",
+                        committed ? "Committed" : "No changes for", worldDir.getName());
+                succeeded = true;
+                return;
+            }
+            // Earlier autosave backups may still be waiting to be pushed
+            if (!committed && !hasUnpushedCommits(git.getRepository())) {
+                GithubBackupMod.LOGGER.info("No changes to commit for {}.", worldDir.getName());
+                if (!checkpoint) {
                     sendClientMessageAsync(
                             Text.literal("No changes to backup for " + worldDir.getName()).formatted(Formatting.GRAY));
-                    // git.close(); // Closed in finally
-                    return;
                 }
-                GithubBackupMod.LOGGER.info("Pushing changes to origin/main for {}", repoFullName);
-                PushCommand pushCommand = git.push();
-                pushCommand.setCredentialsProvider(new UsernamePasswordCredentialsProvider(accessToken, ""));
-                pushCommand.setRemote("origin").add("refs/heads/main:refs/heads/main");
-                pushCommand.call();
-                GithubBackupMod.LOGGER.info("Successfully backed up {} to {}", worldDir.getName(), repoFullName);
+                succeeded = true;
+                return;
+            }
+            GithubBackupMod.LOGGER.info("Pushing changes to origin/main for {}", repoFullName);
+            metrics.phase("upload");
+            push(git, metrics, false);
+            lastPush.put(key, System.currentTimeMillis());
+            PushOutbox.get().recordSuccess(worldDir.getName());
+            metrics.phase("compact");
+            GithubBackupMod.LOGGER.info("Successfully backed up {} to {}", worldDir.getName(), repoFullName);
+            if (!checkpoint) {
                 sendClientMessageAsync(
                         Text.literal("Backup complete for " + worldDir.getName()).formatted(Formatting.GREEN));
-                // --- Ensure folder name matches canonical casing ---
-                String canonicalName = worldDir.getCanonicalFile().getName();
-                if (!worldDir.getName().equals(canonicalName)) {
-                    File correctDir = new File(worldDir.getParentFile(), canonicalName);
-                    if (!correctDir.exists()) {
-                        boolean renamed = worldDir.renameTo(correctDir);
-                        if (renamed) {
-                            GithubBackupMod.LOGGER.info("Renamed world folder to canonical casing: {}", canonicalName);
-                        } else {
-                            GithubBackupMod.LOGGER.warn("Failed to rename world folder to canonical casing: {}",
-                                    canonicalName);
-                        }
+            }
+            compactHistoryIfDue(git, gitDir);
+            // --- Ensure folder name matches canonical casing ---
+            // Skipped for snapshots: the world may already be open again
+            String canonicalName = worldDir.getCanonicalFile().getName();
+            if (!fromSnapshot && !worldDir.getName().equals(canonicalName)) {
+                File correctDir = new File(worldDir.getParentFile(), canonicalName);
+                if (!correctDir.exists()) {
+                    boolean renamed = worldDir.renameTo(correctDir);
+                    if (renamed) {
+                        GithubBackupMod.LOGGER.info("Renamed world folder to canonical casing: {}", canonicalName);
+                    } else {
+                        GithubBackupMod.LOGGER.warn("Failed to rename world folder to canonical casing: {}",
+                                canonicalName);
                     }
                 }
-            } catch (TransportException e) {
-                GithubBackupMod.LOGGER.error("Git transport error for {}: {}", worldDir.getName(), e.getMessage());
-                String specificError = e.getMessage();
-                if (specificError.contains("not found")) {
-                    sendClientMessageAsync(Text.literal(
-                            "Backup FAILED for " + worldDir.getName() + ": Repository not found or access denied.")
-                            .formatted(Formatting.RED));
-                } else if (specificError.contains("Authentication not supported")) {
-                    sendClientMessageAsync(Text.literal(
-                            "Backup FAILED for " + worldDir.getName() + ": GitHub token likely invalid or expired.")
+            }
+            succeeded = true;
+        } catch (TransportException e) {
+            GithubBackupMod.LOGGER.error("Git transport error for {}: {}", worldDir.getName(), e.getMessage());
+            // The backup is committed; only the push is missing. Only failures
+            // that can pass are retried, the rest are reported once below.
+            boolean retry = PushOutbox.isTransient(e);
+            if (retry) {
+                PushOutbox.get().recordFailure(worldDir.getName(), repoFullName, e.getMessage());
+            }
+            String specificError = e.getMessage();
+            if (specificError.contains("not found")) {
+                sendClientMessageAsync(Text.literal(
+                        "Backup FAILED for " + worldDir.getName() + ": Repository not found or access denied.")
+                        .formatted(Formatting.RED));
+            } else if (specificError.contains("Authentication not supported")) {
+                sendClientMessageAsync(Text.literal(
+                        "Backup FAILED for " + worldDir.getName() + ": GitHub token likely invalid or expired.")
+                        .formatted(Formatting.RED));
+            } else if (retry) {
+                sendClientMessageAsync(Text.literal("Upload FAILED for " + worldDir.getName()
+                        + ". The backup is saved locally and will be retried automatically.")
+                        .formatted(Formatting.RED));
+            } else {
+                sendClientMessageAsync(Text.literal("Upload FAILED for " + worldDir.getName()
+                        + ". The backup is saved locally. Error: " + specificError.split("\n")[0])
+                        .formatted(Formatting.RED));
+            }
+        } catch (URISyntaxException e) { // Catch URISyntaxException
+            GithubBackupMod.LOGGER.error("Git operation failed for {}: Invalid remote URL syntax '{}': {}",
+                    worldDir.getName(), remoteUrl, e.getMessage(), e);
+            sendClientMessageAsync(
+                    Text.literal("Backup FAILED for " + worldDir.getName() + ". Invalid Git URL. Check logs.")
                             .formatted(Formatting.RED));
-                } else {
+        } catch (GitAPIException | IOException e) { // Catch other Git and IO exceptions
+            GithubBackupMod.LOGGER.error("Git operation failed for {}: {}", worldDir.getName(), e.getMessage(), e);
+            sendClientMessageAsync(Text
+                    .literal(
+                            "Backup FAILED for " + worldDir.getName() + ". Error: " + e.getMessage().split("\n")[0])
+                    .formatted(Formatting.RED));
+        } finally {
+            metrics.finish(succeeded);
+            if (git != null) {
+                git.getRepository().close();
+                git.close();
+            }
+        }
+    }
+
+    /**
+     * Whether a backed-up world still has work for a backup: an autosave
+     * commit whose push was deferred, or files changed since the last backup.
+     * Jobs already queued for the world are not counted; wait for them with
+     * {@link SyncScheduler#whenIdle} first. Worlds without a repository yet are
+     * left to the backup at shutdown, which creates it.
+     */
+    public boolean needsBackup(File worldDir) {
+        File gitDir = new File(worldDir, ".git");
+        if (!new File(gitDir, "config").exists()) {
+            return false;
+        }
+        try (Repository repository = new FileRepositoryBuilder().setGitDir(gitDir).build()) {
+            if (hasUnpushedCommits(repository)) {
+                return true;
+            }
+            WorldStatCache.ChangeSet changes = WorldStatCache.load(worldDir).scan(worldDir);
+            // Every backup rewrites the metadata after its scan; on its own it is no change
+            changes.modified.remove(".worldsyncer.json");
+            return !changes.isEmpty();
+        } catch (IOException e) {
+            GithubBackupMod.LOGGER.warn("Could not check {} for changes: {}", worldDir.getName(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Pushes the unpushed backups of a world whose earlier push failed, and
+     * records the outcome in the {@link PushOutbox}.
+     */
+    public CompletableFuture<Void> retryPush(String worldName, String repoFullName) {
+        File worldDir = getSavesDir().resolve(worldName).toFile();
+        String key = ModConfig.worldKey(worldName);
+        return scheduler.submit(key, () -> {
+            PushOutbox outbox = PushOutbox.get();
+            if (!new File(new File(worldDir, ".git"), "config").exists()) {
+                // World deleted or its repository removed since
+                outbox.recordSuccess(worldName);
+                return;
+            }
+            TransferMetrics metrics = TransferMetrics.start("retry", worldName);
+            boolean succeeded = false;
+            try (Git git = Git.open(worldDir)) {
+                if (new File(git.getRepository().getDirectory(), UPLOAD_MARKER).exists()) {
+                    // Only part of the world is committed; the next backup uploads
+                    // the rest and moves main
+                    if (hasUnpushedCommits(git.getRepository())) {
+                        metrics.phase("upload");
+                        push(git, metrics, true);
+                    }
+                } else if (hasUnpushedCommits(git.getRepository())) {
+                    metrics.phase("upload");
+                    push(git, metrics, false);
+                    lastPush.put(key, System.currentTimeMillis());
                     sendClientMessageAsync(
-                            Text.literal("Backup FAILED for " + worldDir.getName() + ". Transport error. Check logs.")
-                                    .formatted(Formatting.RED));
+                            Text.literal("Uploaded pending backup of " + worldName).formatted(Formatting.GREEN));
+                }
+                outbox.recordSuccess(worldName);
+                succeeded = true;
+            } catch (GitAPIException | IOException e) {
+                GithubBackupMod.LOGGER.warn("Retried push of {} failed: {}", worldName, e.getMessage());
+                if (PushOutbox.isTransient(e)) {
+                    outbox.recordFailure(worldName, repoFullName, e.getMessage());
+                } else {
+                    // Retrying cannot fix it; the next backup of the world pushes again
+                    outbox.discard(worldName, e.getMessage());
+                    sendClientMessageAsync(Text.literal("Pending upload of " + worldName + " stopped: "
+                            + e.getMessage().split("\n")[0]).formatted(Formatting.RED));
                 }
-            } catch (URISyntaxException e) { // Catch URISyntaxException
-                GithubBackupMod.LOGGER.error("Git operation failed for {}: Invalid remote URL syntax '{}': {}",
-                        worldDir.getName(), remoteUrl, e.getMessage(), e);
-                sendClientMessageAsync(
-                        Text.literal("Backup FAILED for " + worldDir.getName() + ". Invalid Git URL. Check logs.")
-                                .formatted(Formatting.RED));
-            } catch (GitAPIException | IOException e) { // Catch other Git and IO exceptions
-                GithubBackupMod.LOGGER.error("Git operation failed for {}: {}", worldDir.getName(), e.getMessage(), e);
-                sendClientMessageAsync(Text
-                        .literal(
-                                "Backup FAILED for " + worldDir.getName() + ". Error: " + e.getMessage().split("\n")[0])
-                        .formatted(Formatting.RED));
             } finally {
-                if (git != null) {
-                    git.close();
+                metrics.finish(succeeded);
+            }
+        });
+    }
+
+    // Pushes main, or with partial set the batches of an unfinished upload to
+    // UPLOAD_REF, leaving the remote's main at its last complete backup
+    private void push(Git git, TransferMetrics metrics, boolean partial) throws GitAPIException {
+        PushCommand pushCommand = git.push();
+        pushCommand.setCredentialsProvider(backend.credentials());
+        pushCommand.setProgressMonitor(metrics).setTransportConfigCallback(metrics.countingTransport());
+        // Thin, like git itself: changed files upload as deltas of the
+        // versions the remote already has
+        pushCommand.setRemote("origin").setThin(true);
+        if (partial) {
+            // Forced: an upload abandoned before a history compaction may
+            // have left commits there that main no longer contains
+            pushCommand.add("+refs/heads/main:" + UPLOAD_REF);
+        } else {
+            pushCommand.add("refs/heads/main:refs/heads/main").add(":" + UPLOAD_REF);
+        }
+        for (PushResult result : pushCommand.call()) {
+            for (RemoteRefUpdate update : result.getRemoteUpdates()) {
+                RemoteRefUpdate.Status status = update.getStatus();
+                if (status != RemoteRefUpdate.Status.OK && status != RemoteRefUpdate.Status.UP_TO_DATE
+                        && !(update.isDelete() && status == RemoteRefUpdate.Status.NON_EXISTING)) {
+                    // E.g. main was moved by another machine; the commits stay
+                    // local for the next backup, retrying alone cannot help
+                    throw new TransportException("Push of " + update.getRemoteName() + " was not accepted: " + status
+                            + (update.getMessage() != null ? " (" + update.getMessage() + ")" : ""));
                 }
             }
-        }, CompletableFuture.delayedExecutor(100, java.util.concurrent.TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private boolean isPushDue(String key) {
+        ModConfig config = GithubBackupMod.getConfig();
+        long interval = TimeUnit.MINUTES.toMillis(config != null ? config.autosavePushMinutes : 15);
+        Long last = lastPush.get(key);
+        return last == null || System.currentTimeMillis() - last >= interval;
+    }
+
+    private static boolean hasUnpushedCommits(Repository repository) throws IOException {
+        ObjectId main = repository.resolve("refs/heads/main");
+        return main != null && !main.equals(repository.resolve("refs/remotes/origin/main"));
+    }
+
+    // Applies the retention policy after a successful push. Failures only cost
+    // disk space, so they never fail the backup itself
+    private void compactHistoryIfDue(Git git, File gitDir) {
+        ModConfig config = GithubBackupMod.getConfig();
+        if (config == null || !config.compactHistory || !HistoryCompactor.isDue(gitDir)) {
+            return;
+        }
+        try {
+            new HistoryCompactor(TimeUnit.DAYS.toMillis(config.retainHourlyForDays),
+                    TimeUnit.DAYS.toMillis(config.retainDailyForDays))
+                    .compact(git, backend.credentials());
+        } catch (GitAPIException | IOException | JGitInternalException e) {
+            GithubBackupMod.LOGGER.warn("History compaction failed for {}: {}", gitDir.getParentFile().getName(),
+                    e.getMessage());
+        }
+    }
+
+    // Opens the world's repository against an arbitrary work tree without
+    // recording that work tree in the repository config
+    private static Git openWithWorkTree(File gitDir, File workTree) throws IOException {
+        Repository repository = new FileRepositoryBuilder().setGitDir(gitDir).setWorkTree(workTree)
+                .setMustExist(true).build();
+        return new Git(repository);
+    }
+
+    private Git cloneWorld(String url, File worldDir, TransferMetrics metrics) throws GitAPIException, IOException {
+        ModConfig config = GithubBackupMod.getConfig();
+        return cloneWorld(url, worldDir, metrics, config != null && config.lazyRestore);
+    }
+
+    /**
+     * Clones a world repository and writes its tip into the world folder. With
+     * a restore depth configured only the last commits are transferred, so the
+     * download scales with the current world instead of its whole history.
+     * A lazy clone transfers no file contents at all; {@link LazyRestore}
+     * fetches what the world needs to be playable and queues the rest.
+     */
+    private Git cloneWorld(String url, File worldDir, TransferMetrics metrics, boolean lazy)
+            throws GitAPIException, IOException {
+        ModConfig config = GithubBackupMod.getConfig();
+        int depth = config != null ? config.restoreCloneDepth : 0;
+        long start = System.nanoTime();
+        metrics.phase("clone");
+        CloneCommand clone = Git.cloneRepository()
+                .setURI(url)
+                .setDirectory(worldDir)
+                .setBranch("main")
+                .setNoCheckout(true)
+                .setCredentialsProvider(backend.credentials())
+                .setProgressMonitor(metrics);
+        if (lazy) {
+            FilterSpec noBlobs = FilterSpec.fromFilterLine(LazyRestore.FILTER);
+            clone.setTransportConfigCallback(transport -> {
+                metrics.countingTransport().configure(transport);
+                transport.setFilterSpec(noBlobs);
+            });
+        } else {
+            clone.setTransportConfigCallback(metrics.countingTransport());
+        }
+        if (depth > 0) {
+            clone.setDepth(depth);
+        }
+        Git git;
+        try {
+            git = clone.call();
+            writeSparseProfile(worldDir);
+        } catch (TransportException e) {
+            if (!lazy || e.getCause() instanceof NoRemoteRepositoryException) {
+                throw e;
+            }
+            // A server without partial clone support refuses the filter
+            GithubBackupMod.LOGGER.info("{} does not support partial clones ({}), cloning {} in full", url,
+                    e.getMessage(), worldDir.getName());
+            deleteDirectory(worldDir);
+            return cloneWorld(url, worldDir, metrics, false);
+        }
+        long fetchedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // The clone skips checkout; the restorer writes the tip and knows how to
+        // reassemble codec-stored files
+        metrics.phase("restore");
+        LazyRestore remaining = null;
+        try {
+            if (lazy) {
+                LazyRestore.markPartial(git.getRepository());
+            }
+            ObjectId remoteMain = git.getRepository().resolve("refs/remotes/origin/main");
+            if (remoteMain != null && lazy) {
+                remaining = LazyRestore.plan(git.getRepository(), remoteMain, url, backend.credentials());
+                remaining.restoreEssentials(metrics);
+            } else if (remoteMain != null) {
+                new WorldRestorer(git.getRepository()).restore(remoteMain);
+            }
+        } catch (org.eclipse.jgit.errors.TransportException e) {
+            git.close();
+            // The filter was accepted but blobs cannot be asked for by id; the
+            // world folder only holds what this clone wrote
+            GithubBackupMod.LOGGER.warn("Could not fetch files of {} on demand ({}), cloning it in full",
+                    worldDir.getName(), e.getMessage());
+            deleteDirectory(worldDir);
+            return cloneWorld(url, worldDir, metrics, false);
+        } catch (IOException e) {
+            git.close();
+            throw e;
+        }
+        GithubBackupMod.LOGGER.info("Cloned {} (depth {}{}): {} KiB of objects, fetched in {} ms, playable after {} ms",
+                worldDir.getName(), depth > 0 ? depth : "full", lazy ? ", lazy" : "",
+                directorySize(new File(worldDir, ".git/objects")) / 1024, fetchedMillis,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (remaining != null) {
+            continueRestore(worldDir, remaining);
+        }
+        return git;
+    }
+
+    /** Continues a lazy restore that an earlier session did not finish. */
+    public void resumeRestore(File worldDir) {
+        try {
+            LazyRestore restore = LazyRestore.resume(worldDir, backend.credentials());
+            if (restore != null) {
+                GithubBackupMod.LOGGER.info("Resuming the restore of {}", worldDir.getName());
+                continueRestore(worldDir, restore);
+            } else {
+                // Restored, but its history may still be partial
+                scheduler.submit(ModConfig.worldKey(worldDir.getName()), () -> fetchRemainingObjects(worldDir));
+            }
+        } catch (IOException e) {
+            GithubBackupMod.LOGGER.warn("Could not resume the restore of {}: {}", worldDir.getName(), e.getMessage());
+        }
+    }
+
+    // Queued on the world right behind the pull that made it playable, so a
+    // backup queued later only runs once every file is there
+    private CompletableFuture<Void> continueRestore(File worldDir, LazyRestore restore) {
+        return scheduler.submit(ModConfig.worldKey(worldDir.getName()), () -> {
+            TransferMetrics metrics = TransferMetrics.start("restore", worldDir.getName());
+            try {
+                restore.restoreRemaining(metrics);
+                metrics.finish(true);
+                sendClientMessageAsync(Text.literal("Finished downloading " + worldDir.getName() + ".")
+                        .formatted(Formatting.GREEN));
+                fetchRemainingObjects(worldDir);
+            } catch (IOException e) {
+                metrics.finish(false);
+                GithubBackupMod.LOGGER.error("Restoring the rest of {} failed: {}", worldDir.getName(), e.getMessage());
+                sendClientMessageAsync(Text.literal("Could not download the rest of " + worldDir.getName()
+                        + "; it continues on the next start. Areas not downloaded yet may generate as new terrain.")
+                        .formatted(Formatting.RED));
+            }
+        });
+    }
+
+    // Older backups and files outside the sparse profile, so gc and history
+    // compaction can run on the repository again. Tried again on the next start
+    // if it fails
+    private void fetchRemainingObjects(File worldDir) {
+        try {
+            LazyRestore.fetchRemainingObjects(worldDir, backend.credentials());
+        } catch (IOException e) {
+            GithubBackupMod.LOGGER.warn("Could not fetch the history of {}: {}", worldDir.getName(), e.getMessage());
+        }
+    }
+
+    static long directorySize(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return dir.length();
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.isDirectory() ? directorySize(file) : file.length();
+        }
+        return size;
+    }
+
+    // Mirrors the sparse profile of the world's config entry into its repository,
+    // where scans and restores read it. Returns true if the profile changed
+    private static boolean writeSparseProfile(File worldDir) {
+        ModConfig config = GithubBackupMod.getConfig();
+        ModConfig.WorldBackupEntry entry = config == null ? null
+                : config.backedUpWorlds.get(ModConfig.worldKey(worldDir.getName()));
+        if (entry == null) {
+            return false;
+        }
+        try {
+            return SparseProfile.write(worldDir, entry.sparseExcludes, entry.sparseIncludes);
+        } catch (IOException e) {
+            GithubBackupMod.LOGGER.warn("Could not write the sparse profile of {}: {}", worldDir.getName(),
+                    e.getMessage());
+            return false;
+        }
+    }
+
+    private static void writeGitignore(File dir) {
+        File gitignore = new File(dir, ".gitignore");
+        if (!gitignore.exists()) {
+            try (FileWriter writer = new FileWriter(gitignore)) {
+                writer.write(DEFAULT_GITIGNORE);
+                GithubBackupMod.LOGGER.info("Created .gitignore in {}", dir.getAbsolutePath());
+            } catch (IOException e) {
+                GithubBackupMod.LOGGER.warn("Could not create .gitignore: {}", e.getMessage());
+            }
+        }
+    }
+
+    // Written into the files being committed, and mirrored into the live world
+    // when committing from a snapshot so both stay identical
+    private static void writeWorldMetadata(File worldDir, File workTree) throws IOException {
+        String canonicalName = worldDir.getCanonicalFile().getName();
+        String json = "{\"realWorldName\":\"" + canonicalName.replace("\"", "\\\"") + "\"}";
+        for (File dir : workTree.equals(worldDir) ? new File[] { worldDir } : new File[] { workTree, worldDir }) {
+            File meta = new File(dir, ".worldsyncer.json");
+            try (FileWriter writer = new FileWriter(meta)) {
+                writer.write(json);
+            } catch (IOException e) {
+                GithubBackupMod.LOGGER.warn("Could not write .worldsyncer.json: {}", e.getMessage());
+            }
+        }
     }
 
     public CompletableFuture<Void> pullWorld(File worldDir, String repoFullName) {
-        return CompletableFuture.runAsync(() -> {
+        return scheduler.submit(ModConfig.worldKey(worldDir.getName()), () -> {
             if (!isConfigured() || repoFullName == null || repoFullName.isEmpty()) {
                 sendClientMessageAsync(
                         Text.literal("Pull skipped for " + worldDir.getName() + ": Not configured or no repo name.")
@@ -314,9 +800,10 @@ public class GithubService {
             sendClientMessageAsync(Text.literal("Checking remote for " + worldDir.getName() + " from " + repoFullName)
                     .formatted(Formatting.AQUA));
             File gitDir = new File(worldDir, ".git");
-            String remoteUrl = "https://github.com/" + repoFullName + ".git";
+            String remoteUrl = backend.remoteUrl(repoFullName);
             Git git = null;
-            boolean retryAfterCreate = false;
+            int roundTrips = 0;
+            TransferMetrics metrics = TransferMetrics.start("pull", worldDir.getName());
             try {
                 if (!gitDir.exists() || !new File(gitDir, "config").exists()) {
                     GithubBackupMod.LOGGER.info(
@@ -343,15 +830,11 @@ public class GithubService {
                         return;
                     }
                     try {
-                        git = Git.cloneRepository()
-                                .setURI(remoteUrl)
-                                .setDirectory(worldDir)
-                                .setBranch("main")
-                                .setCredentialsProvider(new UsernamePasswordCredentialsProvider(accessToken, ""))
-                                .call();
+                        roundTrips++;
+                        git = cloneWorld(remoteUrl, worldDir, metrics);
                         GithubBackupMod.LOGGER.info("Successfully cloned {} into {}", repoFullName, worldDir.getName());
                         sendClientMessageAsync(
-                                Text.literal("Cloned " + worldDir.getName() + " from GitHub.")
+                                Text.literal("Cloned " + worldDir.getName() + " from " + backend.getName() + ".")
                                         .formatted(Formatting.GREEN));
                     } catch (GitAPIException e) {
                         Throwable cause = e.getCause();
@@ -361,8 +844,9 @@ public class GithubService {
                                     repoFullName);
                             String createdRepo = null;
                             try {
-                                createdRepo = createPrivateRepoIfNotExists(worldDir.getName()).get();
-                            } catch (InterruptedException | java.util.concurrent.ExecutionException ex) {
+                                roundTrips++;
+                                createdRepo = createRepo(worldDir.getName());
+                            } catch (Exception ex) {
                                 GithubBackupMod.LOGGER.error("Failed to create repo for {}: {}", worldDir.getName(),
                                         ex.getMessage());
                             }
@@ -381,15 +865,10 @@ public class GithubService {
                                 } catch (Exception ignored) {
                                 }
                                 // Retry clone with new repo name
-                                String retryUrl = "https://github.com/" + createdRepo + ".git";
+                                String retryUrl = backend.remoteUrl(createdRepo);
                                 try {
-                                    git = Git.cloneRepository()
-                                            .setURI(retryUrl)
-                                            .setDirectory(worldDir)
-                                            .setBranch("main")
-                                            .setCredentialsProvider(
-                                                    new UsernamePasswordCredentialsProvider(accessToken, ""))
-                                            .call();
+                                    roundTrips++;
+                                    git = cloneWorld(retryUrl, worldDir, metrics);
                                     GithubBackupMod.LOGGER.info("Successfully cloned {} into {} after repo creation",
                                             createdRepo, worldDir.getName());
                                     sendClientMessageAsync(
@@ -416,6 +895,15 @@ public class GithubService {
                 } else {
                     git = Git.open(worldDir);
                     GithubBackupMod.LOGGER.info("Pulling changes for {}", worldDir.getName());
+                    if (writeSparseProfile(worldDir)) {
+                        // Files the profile brings back are fetched once this pull is done
+                        LazyRestore.markIncomplete(worldDir);
+                    }
+                    int pruned = new WorldRestorer(git.getRepository()).prune();
+                    if (pruned > 0) {
+                        GithubBackupMod.LOGGER.info("Removed {} file(s) outside the sparse profile of {}", pruned,
+                                worldDir.getName());
+                    }
                     var remotes = git.remoteList().call();
                     boolean originExists = remotes.stream().anyMatch(r -> r.getName().equals("origin"));
                     if (!originExists) {
@@ -424,10 +912,21 @@ public class GithubService {
                             r -> r.getName().equals("origin") && !r.getURIs().get(0).toString().equals(remoteUrl))) {
                         git.remoteSetUrl().setRemoteName("origin").setRemoteUri(new URIish(remoteUrl)).call();
                     }
-                    FetchResult fetchResult = git.fetch()
+                    // The only network round trip of a pull: everything after this
+                    // works on the fetched objects
+                    roundTrips++;
+                    metrics.phase("fetch");
+                    FetchCommand fetch = git.fetch()
                             .setRemote("origin")
-                            .setCredentialsProvider(new UsernamePasswordCredentialsProvider(accessToken, ""))
-                            .call();
+                            .setCredentialsProvider(backend.credentials())
+                            .setProgressMonitor(metrics);
+                    fetch.setTransportConfigCallback(metrics.countingTransport());
+                    int depth = GithubBackupMod.getConfig() != null ? GithubBackupMod.getConfig().restoreCloneDepth : 0;
+                    if (depth > 0 && new File(gitDir, "shallow").exists()) {
+                        // Keep shallow restores shallow; full-history repos are left alone
+                        fetch.setDepth(depth);
+                    }
+                    FetchResult fetchResult = fetch.call();
                     Ref remoteMain = fetchResult.getAdvertisedRef("refs/heads/main");
                     ObjectId localMain = git.getRepository().resolve("refs/heads/main");
                     if (remoteMain == null) {
@@ -437,6 +936,19 @@ public class GithubService {
                                 .formatted(Formatting.YELLOW));
                         return;
                     }
+                    if (remoteMain.getObjectId().equals(localMain)) {
+                        GithubBackupMod.LOGGER.info("{} is already up to date with {}", worldDir.getName(),
+                                repoFullName);
+                        repairWorkTree(git, localMain, metrics);
+                        return;
+                    }
+                    if (localMain != null && isAncestor(git.getRepository(), remoteMain.getObjectId(), localMain)) {
+                        // A backup that has not been pushed yet; the next push brings GitHub up to date
+                        GithubBackupMod.LOGGER.info("{} is ahead of {}; nothing to pull", worldDir.getName(),
+                                repoFullName);
+                        repairWorkTree(git, localMain, metrics);
+                        return;
+                    }
                     // Read .worldsyncer.json to get real world name
                     File meta = new File(worldDir, ".worldsyncer.json");
                     String realWorldName = worldDir.getName();
@@ -472,46 +984,30 @@ public class GithubService {
                         }
                     }
                     // --- FORCE OVERWRITE LOCAL WITH REMOTE ---
+                    // A fast-forward when local main is behind; if the histories
+                    // diverged, the GitHub version still wins
+                    metrics.phase("restore");
                     try {
-                        git.reset().setMode(org.eclipse.jgit.api.ResetCommand.ResetType.HARD)
-                                .setRef("origin/main").call();
-                        git.clean().setCleanDirectories(true).setForce(true).call();
+                        new WorldRestorer(git.getRepository()).restore(remoteMain.getObjectId());
                         GithubBackupMod.LOGGER.info("Local world '{}' was forcefully overwritten with remote version.",
                                 currentWorldDir.getName());
                         sendClientMessageAsync(Text
                                 .literal("Local world '" + currentWorldDir.getName()
-                                        + "' was overwritten with the latest version from GitHub.")
+                                        + "' was overwritten with the latest version from " + backend.getName() + ".")
                                 .formatted(Formatting.YELLOW));
                     } catch (Exception ex) {
-                        GithubBackupMod.LOGGER.error("Failed to hard reset/clean for {}: {}", currentWorldDir.getName(),
+                        GithubBackupMod.LOGGER.error("Failed to restore {} to the remote version: {}", currentWorldDir.getName(),
                                 ex.getMessage());
                         sendClientMessageAsync(
                                 Text.literal("Failed to force overwrite local world '" + currentWorldDir.getName()
                                         + "'. Manual intervention may be required.").formatted(Formatting.RED));
                         return;
                     }
-                    PullResult pullResult = git.pull()
-                            .setRemote("origin").setRemoteBranchName("main")
-                            .setCredentialsProvider(new UsernamePasswordCredentialsProvider(accessToken, ""))
-                            .call();
-                    if (pullResult.isSuccessful()) {
-                        GithubBackupMod.LOGGER.info("Successfully pulled latest changes for {}",
-                                currentWorldDir.getName());
-                        sendClientMessageAsync(
-                                Text.literal("Pulled latest for " + currentWorldDir.getName())
-                                        .formatted(Formatting.GREEN));
-                    } else {
-                        GithubBackupMod.LOGGER.warn("Pull for {} was not strictly successful, may have conflicts: {}",
-                                currentWorldDir.getName(),
-                                pullResult.getMergeResult() != null ? pullResult.getMergeResult().getMergeStatus()
-                                        : "Unknown status");
-                        sendClientMessageAsync(Text
-                                .literal("Pull for " + currentWorldDir.getName()
-                                        + " completed. Check for conflicts if any.")
-                                .formatted(Formatting.YELLOW));
-                    }
+                    sendClientMessageAsync(
+                            Text.literal("Pulled latest for " + currentWorldDir.getName()).formatted(Formatting.GREEN));
                 }
             } catch (TransportException e) {
+                metrics.finish(false);
                 GithubBackupMod.LOGGER.error("Git transport error during pull/clone for {}: {}", worldDir.getName(),
                         e.getMessage());
                 String specificError = e.getMessage();
@@ -529,22 +1025,131 @@ public class GithubService {
                                     .formatted(Formatting.RED));
                 }
             } catch (URISyntaxException e) { // Catch URISyntaxException
+                metrics.finish(false);
                 GithubBackupMod.LOGGER.error("Git operation failed for {}: Invalid remote URL syntax '{}': {}",
                         worldDir.getName(), remoteUrl, e.getMessage(), e);
                 sendClientMessageAsync(
                         Text.literal("Pull/Clone FAILED for " + worldDir.getName() + ". Invalid Git URL. Check logs.")
                                 .formatted(Formatting.RED));
             } catch (GitAPIException | IOException e) { // Catch other Git and IO exceptions
+                metrics.finish(false);
                 GithubBackupMod.LOGGER.error("Git pull/clone failed for {}: {}", worldDir.getName(), e.getMessage(), e);
                 sendClientMessageAsync(Text.literal(
                         "Pull/Clone FAILED for " + worldDir.getName() + ". Error: " + e.getMessage().split("\n")[0])
                         .formatted(Formatting.RED));
             } finally {
+                // No-op if a failure already finished it
+                metrics.finish(true);
                 if (git != null) {
                     git.close();
+                    // Files a restore in an earlier session did not get to, now of
+                    // whatever main points at
+                    resumeRestore(worldDir);
                 }
+                SyncMetrics.recordPull(worldDir.getName(), roundTrips);
             }
-        }, CompletableFuture.delayedExecutor(100, java.util.concurrent.TimeUnit.MILLISECONDS));
+        });
+    }
+
+    // With nothing to pull, a pull still restores the world files that differ
+    // from the last backup or restore, e.g. a deleted or damaged region file
+    private void repairWorkTree(Git git, ObjectId localMain, TransferMetrics metrics) throws IOException {
+        File worldDir = git.getRepository().getWorkTree();
+        if (LazyRestore.isIncomplete(worldDir)) {
+            // Missing files are expected; resumeRestore writes them
+            return;
+        }
+        WorldStatCache.ChangeSet changes = WorldStatCache.load(worldDir).scan(worldDir);
+        changes.modified.remove(".worldsyncer.json");
+        if (changes.isEmpty() || changes.isInitial()) {
+            // Without a stat cache there is no record to compare the files with
+            return;
+        }
+        GithubBackupMod.LOGGER.info("{} differs from its last backup ({} changed, {} missing), restoring it",
+                worldDir.getName(), changes.modified.size(), changes.removed.size());
+        metrics.phase("restore");
+        int touched = new WorldRestorer(git.getRepository()).restore(localMain);
+        sendClientMessageAsync(Text.literal("Restored " + touched + " changed or missing file(s) of "
+                + worldDir.getName() + " from its latest backup.").formatted(Formatting.YELLOW));
+    }
+
+    private static boolean isAncestor(Repository repository, ObjectId ancestor, ObjectId descendant)
+            throws IOException {
+        try (RevWalk walk = new RevWalk(repository)) {
+            return walk.isMergedInto(walk.parseCommit(ancestor), walk.parseCommit(descendant));
+        }
+    }
+
+    /**
+     * Finds which of the given worlds (world name to repo full name) actually
+     * need {@link #pullWorld}: those not cloned yet, and those whose local main
+     * differs from main in the backend. All remote heads are resolved at once
+     * by the backend (one batched GraphQL query on GitHub), falling back to a
+     * parallel ls-remote per repo.
+     * Worlds whose remote state cannot be determined are included.
+     */
+    public CompletableFuture<Set<String>> findWorldsNeedingPull(Map<String, String> worlds) {
+        CompletableFuture<Map<String, String>> heads = scheduler.submit(SyncScheduler.GLOBAL_KEY, () -> {
+            if (!isConfigured() || worlds.isEmpty()) {
+                return new HashMap<String, String>();
+            }
+            try {
+                return backend.probeHeads(worlds);
+            } catch (IOException e) {
+                GithubBackupMod.LOGGER.warn("Batched remote head probe failed, falling back to ls-remote: {}",
+                        e.getMessage());
+                return null;
+            }
+        });
+        return heads.thenCompose(result -> result != null ? CompletableFuture.completedFuture(result)
+                : lsRemoteAll(worlds)).thenApply(remoteHeads -> {
+                    Set<String> stale = new HashSet<>();
+                    Path savesDir = getSavesDir();
+                    for (Map.Entry<String, String> world : worlds.entrySet()) {
+                        String remoteHead = remoteHeads.get(world.getKey());
+                        if (RemoteHeadProbe.NO_BRANCH.equals(remoteHead)) {
+                            continue;
+                        }
+                        if (remoteHead == null || !remoteHead.equals(localMain(savesDir.resolve(world.getKey())))) {
+                            stale.add(world.getKey());
+                        }
+                    }
+                    GithubBackupMod.LOGGER.info("Remote head probe: {} of {} world(s) need a pull", stale.size(),
+                            worlds.size());
+                    return stale;
+                });
+    }
+
+    // Runs one ls-remote per world on that world's queue, so they proceed in
+    // parallel without ever blocking a scheduler thread on another job
+    private CompletableFuture<Map<String, String>> lsRemoteAll(Map<String, String> worlds) {
+        Map<String, String> heads = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> probes = new ArrayList<>();
+        for (Map.Entry<String, String> world : worlds.entrySet()) {
+            probes.add(scheduler.submit(ModConfig.worldKey(world.getKey()), () -> {
+                try {
+                    heads.put(world.getKey(), RemoteHeadProbe.lsRemote(backend.remoteUrl(world.getValue()),
+                            backend.credentials()));
+                } catch (GitAPIException e) {
+                    GithubBackupMod.LOGGER.warn("ls-remote failed for {}: {}", world.getValue(), e.getMessage());
+                }
+            }));
+        }
+        return CompletableFuture.allOf(probes.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> heads);
+    }
+
+    // SHA of refs/heads/main in a world's repository, or null if it has none
+    private static String localMain(Path worldDir) {
+        File gitDir = worldDir.resolve(".git").toFile();
+        if (!new File(gitDir, "config").exists()) {
+            return null;
+        }
+        try (Repository repository = new FileRepositoryBuilder().setGitDir(gitDir).setMustExist(true).build()) {
+            ObjectId main = repository.resolve("refs/heads/main");
+            return main == null ? null : main.name();
+        } catch (IOException e) {
+            return null;
+        }
     }
 
     public static Path getSavesDir() {
@@ -557,7 +1162,15 @@ public class GithubService {
         return client.getLevelStorage().getSavesDirectory();
     }
 
-    private boolean deleteDirectory(File directoryToBeDeleted) {
+    /**
+     * Where world snapshots are staged before backup. Kept next to the saves
+     * folder so hard links stay on the same filesystem.
+     */
+    public static Path getStagingDir() {
+        return getSavesDir().toAbsolutePath().resolveSibling("world-syncer-staging");
+    }
+
+    static boolean deleteDirectory(File directoryToBeDeleted) {
         File[] allContents = directoryToBeDeleted.listFiles();
         if (allContents != null) {
             for (File file : allContents) {
@@ -568,9 +1181,9 @@ public class GithubService {
     }
 
     // Lists all repos for the authenticated user that match the Minecraft world
-    // backup pattern
+    // backup pattern, served from the repo catalog cache when it is fresh
     public CompletableFuture<Map<String, String>> listMinecraftWorldRepos() {
-        return CompletableFuture.supplyAsync(() -> {
+        return scheduler.submit(SyncScheduler.GLOBAL_KEY, () -> {
             Map<String, String> result = new HashMap<>();
             if (!isConfigured()) {
                 sendClientMessageAsync(
@@ -578,21 +1191,14 @@ public class GithubService {
                 return result;
             }
             try {
-                String ownerLogin = github.getMyself().getLogin();
-                for (GHRepository repo : github.getMyself().listRepositories()) {
-                    String repoName = repo.getName();
-                    if (repoName.startsWith("minecraft-world-")) {
-                        // Extract world folder name from repo name (replace dashes with spaces)
-                        String worldName = repoName.substring("minecraft-world-".length()).replace('-', ' ');
-                        result.put(worldName, ownerLogin + "/" + repoName);
-                    }
-                }
+                result.putAll(backend.listTargets());
             } catch (IOException e) {
-                GithubBackupMod.LOGGER.error("Failed to list GitHub repositories: {}", e.getMessage(), e);
-                sendClientMessageAsync(
-                        Text.literal("Failed to list GitHub repos: " + e.getMessage()).formatted(Formatting.RED));
+                GithubBackupMod.LOGGER.error("Failed to list {} repositories: {}", backend.getName(), e.getMessage(),
+                        e);
+                sendClientMessageAsync(Text.literal("Failed to list " + backend.getName() + " repos: " + e.getMessage())
+                        .formatted(Formatting.RED));
             }
             return result;
-        }, CompletableFuture.delayedExecutor(100, java.util.concurrent.TimeUnit.MILLISECONDS));
+        });
     }
 }
\ No newline at end of file
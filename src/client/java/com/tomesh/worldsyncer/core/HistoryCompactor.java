@@ -0,0 +1,231 @@
+package com.tomesh.worldsyncer.core;
+
+import com.tomesh.worldsyncer.GithubBackupMod;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RefLeaseSpec;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thins out a world's backup history with a rolling retention policy: every
+ * backup is kept for a while, then one per hour, then one per day, then one
+ * per week. Kept backups are re-chained into a new linear history (their trees
+ * are full snapshots, so nothing but the dropped versions is lost), pushed
+ * with a lease so a concurrent backup from another machine is never
+ * overwritten, and the freed objects are garbage collected locally.
+ */
+public class HistoryCompactor {
+    private static final String MARKER_FILE = "worldsyncer-compacted";
+    // Compaction rewrites and force-pushes history; doing it after every backup
+    // would make other machines refetch constantly
+    private static final long MIN_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final long hourlyMillis;
+    private final long dailyMillis;
+
+    /**
+     * @param hourlyMillis how long one backup per hour is kept (younger backups
+     *                     are all kept for the first hour)
+     * @param dailyMillis  how long one backup per day is kept; older history
+     *                     keeps one per week
+     */
+    public HistoryCompactor(long hourlyMillis, long dailyMillis) {
+        this.hourlyMillis = hourlyMillis;
+        this.dailyMillis = dailyMillis;
+    }
+
+    public static boolean isDue(File gitDir) {
+        File marker = new File(gitDir, MARKER_FILE);
+        try {
+            long last = Long.parseLong(Files.readString(marker.toPath(), StandardCharsets.UTF_8).trim());
+            return System.currentTimeMillis() - last >= MIN_INTERVAL_MILLIS;
+        } catch (IOException | NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Compacts main and force-pushes it to origin if origin's main is still the
+     * commit that was compacted. Returns false if nothing was rewritten.
+     */
+    public boolean compact(Git git, CredentialsProvider credentials) throws IOException, GitAPIException {
+        Repository repository = git.getRepository();
+        markRun(repository.getDirectory());
+        if (new File(repository.getDirectory(), "shallow").exists()) {
+            // The rewrite would start a new root and drop the history we never
+            // downloaded
+            GithubBackupMod.LOGGER.info("Skipping history compaction for shallow repository {}",
+                    repository.getDirectory());
+            return false;
+        }
+        if (LazyRestore.isPartial(repository)) {
+            // Rewriting the commits reads every blob, and a lazy clone has
+            // only those of the files it restored
+            GithubBackupMod.LOGGER.info("Skipping history compaction for partial clone {}",
+                    repository.getDirectory());
+            return false;
+        }
+        ObjectId oldTip = repository.resolve("refs/heads/main");
+        if (oldTip == null) {
+            return false;
+        }
+        ObjectId newTip;
+        int before;
+        int after;
+        try (RevWalk walk = new RevWalk(repository); ObjectInserter inserter = repository.newObjectInserter()) {
+            List<RevCommit> chain = firstParentChain(walk, oldTip);
+            List<RevCommit> kept = select(chain, System.currentTimeMillis());
+            before = chain.size();
+            after = kept.size();
+            if (after == before) {
+                return false;
+            }
+            newTip = rechain(inserter, kept);
+            inserter.flush();
+        }
+        if (!push(git, credentials, oldTip, newTip)) {
+            return false;
+        }
+        updateRef(repository, "refs/heads/main", newTip);
+        updateRef(repository, "refs/remotes/origin/main", newTip);
+        long sizeBefore = GithubService.directorySize(new File(repository.getDirectory(), "objects"));
+        collectGarbage(git);
+        long sizeAfter = GithubService.directorySize(new File(repository.getDirectory(), "objects"));
+        GithubBackupMod.LOGGER.info("Compacted history of {}: {} -> {} backups, objects {} KiB -> {} KiB",
+                repository.getWorkTree().getName(), before, after, sizeBefore / 1024, sizeAfter / 1024);
+        return true;
+    }
+
+    // Newest first
+    private static List<RevCommit> firstParentChain(RevWalk walk, ObjectId tip) throws IOException {
+        List<RevCommit> chain = new ArrayList<>();
+        RevCommit commit = walk.parseCommit(tip);
+        while (commit != null) {
+            chain.add(commit);
+            commit = commit.getParentCount() > 0 ? walk.parseCommit(commit.getParent(0)) : null;
+        }
+        return chain;
+    }
+
+    /** The commits the policy keeps, oldest first. The newest commit is always kept. */
+    List<RevCommit> select(List<RevCommit> newestFirst, long now) {
+        List<RevCommit> kept = new ArrayList<>();
+        Set<String> buckets = new HashSet<>();
+        for (RevCommit commit : newestFirst) {
+            long time = TimeUnit.SECONDS.toMillis(commit.getCommitTime());
+            long age = now - time;
+            String bucket;
+            if (age < TimeUnit.HOURS.toMillis(1)) {
+                bucket = "all:" + commit.name();
+            } else if (age < hourlyMillis) {
+                bucket = "hour:" + TimeUnit.MILLISECONDS.toHours(time);
+            } else if (age < dailyMillis) {
+                bucket = "day:" + TimeUnit.MILLISECONDS.toDays(time);
+            } else {
+                bucket = "week:" + TimeUnit.MILLISECONDS.toDays(time) / 7;
+            }
+            // Walking newest first, the first commit of a bucket is its newest
+            if (buckets.add(bucket)) {
+                kept.add(commit);
+            }
+        }
+        Collections.reverse(kept);
+        return kept;
+    }
+
+    // Rebuilds the kept commits as a linear chain; an unchanged prefix of the
+    // original history keeps its ids so it does not need pushing again
+    private static ObjectId rechain(ObjectInserter inserter, List<RevCommit> oldestFirst) throws IOException {
+        ObjectId parent = null;
+        boolean rewritten = false;
+        for (RevCommit commit : oldestFirst) {
+            boolean sameParent = parent == null ? commit.getParentCount() == 0
+                    : commit.getParentCount() == 1 && commit.getParent(0).equals(parent);
+            if (!rewritten && sameParent) {
+                parent = commit;
+                continue;
+            }
+            rewritten = true;
+            CommitBuilder builder = new CommitBuilder();
+            builder.setTreeId(commit.getTree());
+            builder.setAuthor(commit.getAuthorIdent());
+            builder.setCommitter(commit.getCommitterIdent());
+            builder.setEncoding(commit.getEncoding());
+            builder.setMessage(commit.getFullMessage());
+            if (parent != null) {
+                builder.setParentId(parent);
+            }
+            parent = inserter.insert(builder);
+        }
+        return parent;
+    }
+
+    private static boolean push(Git git, CredentialsProvider credentials, ObjectId oldTip, ObjectId newTip)
+            throws GitAPIException {
+        Iterable<PushResult> results = git.push()
+                .setRemote("origin")
+                .setCredentialsProvider(credentials)
+                .setRefSpecs(new RefSpec("+" + newTip.name() + ":refs/heads/main"))
+                .setRefLeaseSpecs(new RefLeaseSpec("refs/heads/main", oldTip.name()))
+                .call();
+        for (PushResult result : results) {
+            RemoteRefUpdate update = result.getRemoteUpdate("refs/heads/main");
+            if (update != null && update.getStatus() != RemoteRefUpdate.Status.OK) {
+                GithubBackupMod.LOGGER.warn("History compaction not pushed ({}); GitHub has newer backups",
+                        update.getStatus());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void updateRef(Repository repository, String name, ObjectId id) throws IOException {
+        RefUpdate update = repository.updateRef(name);
+        update.setNewObjectId(id);
+        update.setForceUpdate(true);
+        update.setRefLogMessage("worldsyncer: compact history", false);
+        RefUpdate.Result result = update.update();
+        if (result == RefUpdate.Result.LOCK_FAILURE || result == RefUpdate.Result.IO_FAILURE
+                || result == RefUpdate.Result.REJECTED) {
+            throw new IOException("Could not update " + name + ": " + result);
+        }
+    }
+
+    // Reflogs would otherwise keep every dropped backup reachable for 90 days;
+    // the override only lives in this Repository instance's config
+    private static void collectGarbage(Git git) throws GitAPIException {
+        git.getRepository().getConfig().setString(ConfigConstants.CONFIG_GC_SECTION, null, "reflogExpire", "now");
+        git.getRepository().getConfig().setString(ConfigConstants.CONFIG_GC_SECTION, null,
+                "reflogExpireUnreachable", "now");
+        git.gc().setExpire(new Date()).call();
+    }
+
+    private static void markRun(File gitDir) throws IOException {
+        Files.writeString(new File(gitDir, MARKER_FILE).toPath(), Long.toString(System.currentTimeMillis()),
+                StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,207 @@
+package com.tomesh.worldsyncer.core;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Region files split like {@link RegionChunkCodec}, with every zlib chunk
+ * stored inflated. The game compresses each chunk on its own, so two versions
+ * of a chunk that differ in one block share almost no bytes; inflated, Git
+ * can upload the new version as a small delta of the old one.
+ * <p>
+ * Each chunk entry starts with a marker byte. {@code 1}: the length of the
+ * sector run and of the chunk's NBT (ints), the NBT, then the rest of the run
+ * after the compressed chunk up to its last non-zero byte (sectors the game
+ * reuses keep stale bytes). Decoding deflates the NBT again with the settings
+ * the game uses; a chunk is only stored this way if doing so here gave back
+ * the exact bytes in the file. {@code 0}: the sector run as is, for other
+ * compression types, anything that does not parse, and chunks that leave too
+ * little room in their sectors to be compressed differently.
+ * <p>
+ * Restored chunks are byte-identical only if this machine's zlib compresses
+ * like the one that made the backup; Java uses the zlib it was built with.
+ * Another build gives a chunk the game reads the same. If that comes out
+ * larger than the sectors allow, the chunk is compressed at the best level
+ * instead; chunks are only stored inflated with room to spare for that.
+ */
+public class InflatedChunkCodec extends RegionChunkCodec {
+    private static final int RAW = 0;
+    private static final int INFLATED = 1;
+    private static final int ZLIB = 2;
+    // A chunk header is the payload length (int) and the compression type
+    private static final int CHUNK_HEADER_BYTES = 5;
+    private static final int MAX_INFLATED_BYTES = 32 * 1024 * 1024;
+    // Room a chunk must leave in its sectors to be stored inflated: how much
+    // larger another zlib might compress it, as a fraction of the payload
+    private static final int SPARE_ROOM_DIVISOR = 32;
+    private static final int SPARE_ROOM_MIN_BYTES = 64;
+    // Digests of compressed chunks known to deflate back exactly; a backup
+    // re-encodes every chunk of a changed region, most of them unchanged
+    private static final int VERIFIED_ENTRIES = 64 * 1024;
+    private static final Map<ObjectId, Boolean> VERIFIED = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ObjectId, Boolean> eldest) {
+            return size() > VERIFIED_ENTRIES;
+        }
+    };
+
+    @Override
+    public String suffix() {
+        return ".inflated";
+    }
+
+    @Override
+    protected byte[] encodeChunk(byte[] sectors) {
+        byte[] nbt = inflate(sectors);
+        int tailStart = nbt == null ? 0 : 4 + ByteBuffer.wrap(sectors).getInt();
+        int tailEnd = sectors.length;
+        while (tailEnd > tailStart && sectors[tailEnd - 1] == 0) {
+            tailEnd--;
+        }
+        // Past the tail the run only holds zeros, which decoding may overwrite
+        int spare = sectors.length - tailEnd;
+        if (nbt == null || spare < (tailStart - CHUNK_HEADER_BYTES) / SPARE_ROOM_DIVISOR + SPARE_ROOM_MIN_BYTES) {
+            // The original bytes; nothing to compress again on restore
+            byte[] stored = new byte[sectors.length + 1];
+            stored[0] = RAW;
+            System.arraycopy(sectors, 0, stored, 1, sectors.length);
+            return stored;
+        }
+        return ByteBuffer.allocate(1 + 8 + nbt.length + tailEnd - tailStart)
+                .put((byte) INFLATED)
+                .putInt(sectors.length)
+                .putInt(nbt.length)
+                .put(nbt)
+                .put(sectors, tailStart, tailEnd - tailStart)
+                .array();
+    }
+
+    @Override
+    protected byte[] decodeChunk(byte[] stored) throws IOException {
+        if (stored.length == 0) {
+            throw new IOException("Empty chunk entry");
+        }
+        if (stored[0] == RAW) {
+            return Arrays.copyOfRange(stored, 1, stored.length);
+        }
+        if (stored[0] != INFLATED || stored.length < 9) {
+            throw new IOException("Unknown chunk entry format " + stored[0]);
+        }
+        ByteBuffer entry = ByteBuffer.wrap(stored);
+        entry.get();
+        int runLength = entry.getInt();
+        int nbtLength = entry.getInt();
+        if (nbtLength < 0 || nbtLength > entry.remaining()) {
+            throw new IOException("Inflated chunk entry is truncated");
+        }
+        int tailLength = entry.remaining() - nbtLength;
+        byte[] payload = deflate(stored, entry.position(), nbtLength, Deflater.DEFAULT_COMPRESSION);
+        if (CHUNK_HEADER_BYTES + payload.length + tailLength > runLength) {
+            // This machine's zlib compresses differently from the one that
+            // made the backup, and worse
+            payload = deflate(stored, entry.position(), nbtLength, Deflater.BEST_COMPRESSION);
+        }
+        int tailStart = CHUNK_HEADER_BYTES + payload.length;
+        if (runLength < 0 || tailStart + tailLength > runLength) {
+            throw new IOException("Chunk does not fit its sectors after compressing it again");
+        }
+        byte[] run = new byte[runLength];
+        ByteBuffer.wrap(run).putInt(payload.length + 1).put((byte) ZLIB).put(payload)
+                .put(stored, entry.position() + nbtLength, tailLength);
+        return run;
+    }
+
+    // The chunk's NBT if the run starts with a zlib chunk that deflates back
+    // to the same bytes; otherwise null
+    private static byte[] inflate(byte[] sectors) {
+        if (sectors.length < CHUNK_HEADER_BYTES) {
+            return null;
+        }
+        ByteBuffer run = ByteBuffer.wrap(sectors);
+        int length = run.getInt();
+        if (length < 2 || length > sectors.length - 4 || run.get() != ZLIB) {
+            return null;
+        }
+        int payloadStart = CHUNK_HEADER_BYTES;
+        int payloadEnd = 4 + length;
+        Inflater inflater = new Inflater();
+        byte[] nbt;
+        try {
+            inflater.setInput(sectors, payloadStart, payloadEnd - payloadStart);
+            ByteArrayOutputStream out = new ByteArrayOutputStream((payloadEnd - payloadStart) * 4);
+            byte[] buffer = new byte[64 * 1024];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return null;
+                }
+                out.write(buffer, 0, n);
+                if (out.size() > MAX_INFLATED_BYTES) {
+                    return null;
+                }
+            }
+            if (inflater.getRemaining() != 0) {
+                return null;
+            }
+            nbt = out.toByteArray();
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+        ObjectId digest = digest(sectors, payloadStart, payloadEnd - payloadStart);
+        synchronized (VERIFIED) {
+            if (VERIFIED.get(digest) != null) {
+                return nbt;
+            }
+        }
+        byte[] again = deflate(nbt, 0, nbt.length, Deflater.DEFAULT_COMPRESSION);
+        if (!Arrays.equals(again, 0, again.length, sectors, payloadStart, payloadEnd)) {
+            return null;
+        }
+        synchronized (VERIFIED) {
+            VERIFIED.put(digest, Boolean.TRUE);
+        }
+        return nbt;
+    }
+
+    private static ObjectId digest(byte[] data, int offset, int length) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            sha1.update(data, offset, length);
+            return ObjectId.fromRaw(sha1.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // At the default level, the same deflater settings as the game's
+    // DeflaterOutputStream
+    private static byte[] deflate(byte[] data, int offset, int length, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,571 @@
+package com.tomesh.worldsyncer.core;
+
+import com.tomesh.worldsyncer.GithubBackupMod;
+
+import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.ObjectWalk;
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.URIish;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Restores a world from a clone that holds commits and trees but no file
+ * contents (a blob:none partial clone), fetching blobs by id as they are
+ * needed. {@link #restoreEssentials} writes everything except region files,
+ * plus the regions around the player, after which the world can be opened;
+ * {@link #restoreRemaining} then writes the other regions nearest first, the
+ * player's dimension before the others. When the game opens a region that has
+ * not arrived yet, {@link #awaitFile} moves it to the front and waits for it.
+ * <p>
+ * A marker in the .git folder stays until every file is written, so an
+ * interrupted restore picks up where it stopped. A widened
+ * {@link SparseProfile} sets it too, to fetch the files it brings back.
+ * <p>
+ * Blobs of older backups and of files outside the sparse profile are left
+ * for last. Until {@link #fetchRemainingObjects} got them the repository is
+ * marked the way git marks partial clones, and gc and history rewriting leave
+ * it alone: both read every object.
+ */
+public class LazyRestore {
+    static final String MARKER = "worldsyncer-lazy-restore";
+    // World paths the game created itself because their download took too
+    // long; the next resume writes them over what the game made
+    static final String SKIPPED = "worldsyncer-lazy-skipped";
+    static final String FILTER = "blob:none";
+    // Blobs asked for in one fetch; a region stored as chunks counts each chunk
+    private static final int FETCH_BATCH_BLOBS = 512;
+    // Regions in each direction of the player's that are restored up front
+    private static final int SPAWN_RADIUS_REGIONS = 1;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long MAX_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // How long the game's server thread may wait for one region
+    private static final long AWAIT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    private static final Pattern REGION_FILE =
+            Pattern.compile("(?:(.+)/)?(?:region|entities|poi)/r\\.(-?\\d+)\\.(-?\\d+)\\.mca");
+
+    private static final Map<Path, LazyRestore> ACTIVE = new ConcurrentHashMap<>();
+
+    private final File worldDir;
+    private final ObjectId target;
+    private final String remoteUrl;
+    private final CredentialsProvider credentials;
+    private final Map<String, WorldRestorer.Stored> files;
+    // World paths not written yet: urgent ones first, the rest in download order
+    private final Set<String> pending = new LinkedHashSet<>();
+    private final Deque<String> urgent = new ArrayDeque<>();
+    private final Set<String> skipped = new LinkedHashSet<>();
+    private volatile boolean abandoned;
+
+    private LazyRestore(File worldDir, ObjectId target, String remoteUrl, CredentialsProvider credentials,
+            Map<String, WorldRestorer.Stored> files) {
+        this.worldDir = worldDir;
+        this.target = target;
+        this.remoteUrl = remoteUrl;
+        this.credentials = credentials;
+        this.files = files;
+    }
+
+    /** Plans the restore of {@code target} into the repository's work tree. */
+    public static LazyRestore plan(Repository repository, ObjectId target, String remoteUrl,
+            CredentialsProvider credentials) throws IOException {
+        return new LazyRestore(repository.getWorkTree(), target, remoteUrl, credentials,
+                new WorldRestorer(repository).files(target));
+    }
+
+    /**
+     * Plans the rest of a restore that was interrupted, or returns null if the
+     * world has none. Files that exist by now are left alone.
+     */
+    public static LazyRestore resume(File worldDir, CredentialsProvider credentials) throws IOException {
+        File marker = new File(worldDir, ".git/" + MARKER);
+        if (!marker.exists() || ACTIVE.containsKey(worldDir.toPath().toAbsolutePath().normalize())) {
+            return null;
+        }
+        try (Repository repository = new FileRepositoryBuilder().setGitDir(new File(worldDir, ".git"))
+                .setWorkTree(worldDir).setMustExist(true).build()) {
+            // A pull since the interruption moved main on; its files are what is missing now
+            ObjectId target = repository.resolve("refs/heads/main");
+            String remoteUrl = repository.getConfig().getString("remote", "origin", "url");
+            if (target == null || remoteUrl == null) {
+                return null;
+            }
+            LazyRestore restore = plan(repository, target, remoteUrl, credentials);
+            Path skippedFile = new File(worldDir, ".git/" + SKIPPED).toPath();
+            Set<String> skipped = Files.exists(skippedFile)
+                    ? new HashSet<>(Files.readAllLines(skippedFile, StandardCharsets.UTF_8)) : Set.of();
+            Set<String> missing = restore.files.keySet().stream()
+                    .filter(path -> !new File(worldDir, path).exists() || skipped.contains(path))
+                    .collect(Collectors.toSet());
+            restore.pending.addAll(restore.order(missing, restore.playerRegion()));
+            if (restore.pending.isEmpty()) {
+                Files.deleteIfExists(skippedFile);
+                Files.deleteIfExists(marker.toPath());
+                return null;
+            }
+            // Guard the missing regions from now on, before the job gets to run
+            ACTIVE.put(worldDir.toPath().toAbsolutePath().normalize(), restore);
+            return restore;
+        }
+    }
+
+    /** Makes the next {@link #resume} write whatever files of main are missing. */
+    public static void markIncomplete(File worldDir) throws IOException {
+        Files.writeString(new File(worldDir, ".git/" + MARKER).toPath(), "", StandardCharsets.UTF_8);
+    }
+
+    /** Records in the repository's config that origin holds objects it lacks, as git does. */
+    static void markPartial(Repository repository) throws IOException {
+        StoredConfig config = repository.getConfig();
+        config.setBoolean("remote", "origin", "promisor", true);
+        config.setString("remote", "origin", "partialclonefilter", FILTER);
+        config.save();
+    }
+
+    /** Whether the repository is a partial clone, missing blobs it never fetched. */
+    public static boolean isPartial(Repository repository) {
+        return repository.getConfig().getBoolean("remote", "origin", "promisor", false);
+    }
+
+    /**
+     * Fetches every blob of the local history still missing once the world
+     * itself is restored, then stops marking the repository partial. Returns
+     * false if there is nothing to do yet.
+     */
+    public static boolean fetchRemainingObjects(File worldDir, CredentialsProvider credentials) throws IOException {
+        if (isIncomplete(worldDir) || !new File(worldDir, ".git/config").exists()) {
+            return false;
+        }
+        try (Repository repository = new FileRepositoryBuilder().setGitDir(new File(worldDir, ".git"))
+                .setWorkTree(worldDir).setMustExist(true).build()) {
+            String remoteUrl = repository.getConfig().getString("remote", "origin", "url");
+            if (!isPartial(repository) || remoteUrl == null) {
+                return false;
+            }
+            Set<ObjectId> missing = new LinkedHashSet<>();
+            // Commits and trees all came with the clone; a shallow history
+            // ends where the walk does
+            try (ObjectWalk walk = new ObjectWalk(repository)) {
+                for (Ref ref : repository.getRefDatabase().getRefs()) {
+                    if (ref.getObjectId() != null) {
+                        RevObject tip = walk.peel(walk.parseAny(ref.getObjectId()));
+                        if (tip instanceof RevCommit) {
+                            walk.markStart((RevCommit) tip);
+                        }
+                    }
+                }
+                while (walk.next() != null) {
+                    // Commits first; their trees and blobs follow
+                }
+                RevObject object;
+                while ((object = walk.nextObject()) != null) {
+                    if (object instanceof RevBlob && !repository.getObjectDatabase().has(object)) {
+                        missing.add(object.copy());
+                    }
+                }
+            }
+            LazyRestore fetcher = new LazyRestore(worldDir, null, remoteUrl, credentials, Map.of());
+            List<ObjectId> all = new ArrayList<>(missing);
+            for (int i = 0; i < all.size(); i += FETCH_BATCH_BLOBS) {
+                fetcher.fetchBlobs(repository, all.subList(i, Math.min(all.size(), i + FETCH_BATCH_BLOBS)));
+            }
+            StoredConfig config = repository.getConfig();
+            config.unset("remote", "origin", "promisor");
+            config.unset("remote", "origin", "partialclonefilter");
+            config.save();
+            GithubBackupMod.LOGGER.info("Fetched the {} remaining object(s) of {}; it is a full clone again",
+                    all.size(), worldDir.getName());
+            return true;
+        }
+    }
+
+    public static boolean isIncomplete(File worldDir) {
+        return new File(worldDir, ".git/" + MARKER).exists();
+    }
+
+    /**
+     * Writes every file except region files and the regions around the player,
+     * and points the index and main at the target. Once this returns the world
+     * can be played; the remaining regions are registered so the game waits
+     * for any it opens before {@link #restoreRemaining} wrote them.
+     */
+    public void restoreEssentials(TransferMetrics metrics) throws IOException {
+        Files.writeString(new File(worldDir, ".git/" + MARKER).toPath(), target.name(), StandardCharsets.UTF_8);
+        try (Repository repository = open()) {
+            new WorldRestorer(repository).adopt(target);
+        }
+        List<String> regions = new ArrayList<>();
+        List<String> others = new ArrayList<>();
+        for (String path : files.keySet()) {
+            (REGION_FILE.matcher(path).matches() ? regions : others).add(path);
+        }
+        // level.dat says where the player is, which decides the regions to fetch next
+        metrics.phase("restore");
+        synchronized (this) {
+            pending.addAll(others);
+        }
+        fetchAndWrite(others);
+        Region player = playerRegion();
+        List<String> ordered = order(regions, player);
+        int spawnArea = 0;
+        while (spawnArea < ordered.size() && dimensionRank(ordered.get(spawnArea), player) == 0
+                && distance(ordered.get(spawnArea), player) <= SPAWN_RADIUS_REGIONS) {
+            spawnArea++;
+        }
+        synchronized (this) {
+            pending.addAll(ordered.subList(0, spawnArea));
+        }
+        fetchAndWrite(ordered.subList(0, spawnArea));
+        synchronized (this) {
+            pending.addAll(ordered.subList(spawnArea, ordered.size()));
+        }
+        if (!pending.isEmpty()) {
+            ACTIVE.put(worldDir.toPath().toAbsolutePath().normalize(), this);
+        }
+        GithubBackupMod.LOGGER.info("{} is playable: {} files and {} nearby regions restored, {} regions to follow",
+                worldDir.getName(), others.size(), spawnArea, pending.size());
+    }
+
+    /**
+     * Writes the files still missing, nearest region first, then removes the
+     * marker. Failed fetches are retried with backoff; after too many the
+     * restore gives up and the marker stays for the next attempt. Until then
+     * the world is not backed up, as the game may fill the gaps with new terrain.
+     * The same goes for regions the game stopped waiting for.
+     */
+    public void restoreRemaining(TransferMetrics metrics) throws IOException {
+        ACTIVE.put(worldDir.toPath().toAbsolutePath().normalize(), this);
+        try {
+            int total = pending.size();
+            metrics.phase("restore");
+            metrics.beginTask("Restoring regions", total);
+            int attempts = 0;
+            List<String> batch;
+            while (!(batch = nextBatch()).isEmpty()) {
+                try {
+                    fetchAndWrite(batch);
+                    attempts = 0;
+                    metrics.update(batch.size());
+                } catch (TransportException e) {
+                    if (++attempts >= MAX_ATTEMPTS) {
+                        throw e;
+                    }
+                    long delay = Math.min(TimeUnit.SECONDS.toMillis(5) << (attempts - 1), MAX_RETRY_MILLIS);
+                    GithubBackupMod.LOGGER.warn("Fetching regions of {} failed, retrying in {} s: {}",
+                            worldDir.getName(), delay / 1000, e.getMessage());
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while restoring " + worldDir.getName(), ie);
+                    }
+                }
+            }
+            metrics.endTask();
+            if (!skipped.isEmpty()) {
+                throw new IOException(skipped.size() + " region(s) took too long and were generated by the game; "
+                        + "they are restored on the next start");
+            }
+            Files.deleteIfExists(new File(worldDir, ".git/" + SKIPPED).toPath());
+            Files.deleteIfExists(new File(worldDir, ".git/" + MARKER).toPath());
+            GithubBackupMod.LOGGER.info("Finished restoring {}: {} regions written in the background",
+                    worldDir.getName(), total);
+        } catch (IOException e) {
+            abandoned = true;
+            throw e;
+        } finally {
+            ACTIVE.remove(worldDir.toPath().toAbsolutePath().normalize(), this);
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Called before the game opens a world file. If a restore still has to
+     * write it, it is fetched next and this blocks until it is there.
+     */
+    public static void awaitFile(Path file) {
+        if (ACTIVE.isEmpty()) {
+            return;
+        }
+        Path absolute = file.toAbsolutePath().normalize();
+        for (Map.Entry<Path, LazyRestore> entry : ACTIVE.entrySet()) {
+            if (absolute.startsWith(entry.getKey())) {
+                entry.getValue().await(entry.getKey().relativize(absolute).toString().replace(File.separatorChar, '/'));
+                return;
+            }
+        }
+    }
+
+    private synchronized void await(String path) {
+        if (!pending.contains(path)) {
+            return;
+        }
+        GithubBackupMod.LOGGER.info("Game needs {} of {} before it was restored, fetching it next", path,
+                worldDir.getName());
+        urgent.addFirst(path);
+        boolean interrupted = false;
+        long deadline = System.currentTimeMillis() + AWAIT_TIMEOUT_MILLIS;
+        while (pending.contains(path) && !abandoned) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                // The server thread is frozen meanwhile; let the game generate
+                // the region and keep the download from overwriting it
+                GithubBackupMod.LOGGER.error("Gave up waiting for {} of {} after {} s; the game generates it now. "
+                        + "Backups of the world stop until the next start restores it",
+                        path, worldDir.getName(), AWAIT_TIMEOUT_MILLIS / 1000);
+                pending.remove(path);
+                urgent.remove(path);
+                skipped.add(path);
+                try {
+                    Files.write(new File(worldDir, ".git/" + SKIPPED).toPath(), skipped, StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    GithubBackupMod.LOGGER.warn("Could not record {} as skipped: {}", path, e.getMessage());
+                }
+                break;
+            }
+            try {
+                wait(Math.min(remaining, TimeUnit.SECONDS.toMillis(1)));
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Whatever the game asked for first, then the download order, up to a batch of blobs
+    private synchronized List<String> nextBatch() {
+        List<String> batch = new ArrayList<>();
+        int blobs = 0;
+        Iterable<String> candidates = Stream.concat(urgent.stream(), pending.stream())::iterator;
+        for (String path : candidates) {
+            if (!pending.contains(path) || batch.contains(path)) {
+                continue;
+            }
+            int size = files.get(path).blobs().size();
+            if (!batch.isEmpty() && blobs + size > FETCH_BATCH_BLOBS) {
+                break;
+            }
+            batch.add(path);
+            blobs += size;
+        }
+        return batch;
+    }
+
+    private void fetchAndWrite(Collection<String> paths) throws IOException {
+        if (paths.isEmpty()) {
+            return;
+        }
+        try (Repository repository = open()) {
+            Set<ObjectId> missing = new LinkedHashSet<>();
+            for (String path : paths) {
+                for (ObjectId blob : files.get(path).blobs()) {
+                    if (!repository.getObjectDatabase().has(blob)) {
+                        missing.add(blob);
+                    }
+                }
+            }
+            fetchBlobs(repository, missing);
+            WorldRestorer restorer = new WorldRestorer(repository);
+            WorldStatCache statCache = WorldStatCache.load(worldDir);
+            try (ObjectReader reader = repository.newObjectReader()) {
+                for (String path : paths) {
+                    // Under the lock, so a region the game gave up on is never
+                    // written over what it generated instead
+                    synchronized (this) {
+                        if (!pending.contains(path)) {
+                            continue;
+                        }
+                        statCache.recordFile(worldDir, path, restorer.write(reader, path, files.get(path)));
+                        pending.remove(path);
+                        urgent.remove(path);
+                        notifyAll();
+                    }
+                }
+            }
+            statCache.save();
+        }
+    }
+
+    // Fetches into an empty repository next to the real one: with no commits
+    // to offer as haves, the server cannot leave out blobs the real one lacks.
+    // The received pack is then moved over.
+    private void fetchBlobs(Repository repository, Collection<ObjectId> blobs) throws IOException {
+        if (blobs.isEmpty()) {
+            return;
+        }
+        File fetchDir = new File(repository.getDirectory(), "lazy-fetch");
+        GithubService.deleteDirectory(fetchDir);
+        try (Repository side = new FileRepositoryBuilder().setGitDir(fetchDir).setBare().build()) {
+            side.create(true);
+            StoredConfig config = side.getConfig();
+            config.setInt("protocol", null, "version", 2);
+            config.save();
+            List<RefSpec> wants = blobs.stream().map(blob -> new RefSpec(blob.name())).collect(Collectors.toList());
+            try (Transport transport = Transport.open(side, new URIish(remoteUrl))) {
+                transport.setCredentialsProvider(credentials);
+                transport.fetch(NullProgressMonitor.INSTANCE, wants);
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid remote URL " + remoteUrl, e);
+            }
+            moveObjects(new File(fetchDir, "objects").toPath(), repository.getDirectory().toPath().resolve("objects"));
+        } finally {
+            GithubService.deleteDirectory(fetchDir);
+        }
+        for (ObjectId blob : blobs) {
+            if (!repository.getObjectDatabase().has(blob)) {
+                throw new IOException("Remote did not send " + blob.name() + " for " + worldDir.getName());
+            }
+        }
+    }
+
+    // Pack indexes go last: a pack becomes visible once its index exists
+    private static void moveObjects(Path from, Path to) throws IOException {
+        List<Path> objects;
+        try (Stream<Path> walk = Files.walk(from)) {
+            objects = walk.filter(Files::isRegularFile)
+                    .filter(path -> !from.relativize(path).startsWith("info"))
+                    .sorted(Comparator.comparing(path -> path.toString().endsWith(".idx")))
+                    .collect(Collectors.toList());
+        }
+        for (Path object : objects) {
+            Path dest = to.resolve(from.relativize(object).toString());
+            if (!Files.exists(dest)) {
+                Files.createDirectories(dest.getParent());
+                Files.move(object, dest, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+    }
+
+    private Repository open() throws IOException {
+        return new FileRepositoryBuilder().setGitDir(new File(worldDir, ".git")).setWorkTree(worldDir)
+                .setMustExist(true).build();
+    }
+
+    // Player's dimension folder and region, from the singleplayer player in
+    // level.dat, else the world spawn
+    private Region playerRegion() {
+        try {
+            Map<String, Object> level = Nbt.readCompressed(new File(worldDir, "level.dat").toPath());
+            if (Nbt.get(level, "Data", "Player", "Pos") instanceof List<?> pos && pos.size() == 3) {
+                Object dimension = Nbt.get(level, "Data", "Player", "Dimension");
+                return new Region(dimensionFolder(dimension instanceof String ? (String) dimension : null),
+                        Math.floorDiv((int) Math.floor(((Number) pos.get(0)).doubleValue()), 512),
+                        Math.floorDiv((int) Math.floor(((Number) pos.get(2)).doubleValue()), 512));
+            }
+            if (Nbt.get(level, "Data", "SpawnX") instanceof Number x
+                    && Nbt.get(level, "Data", "SpawnZ") instanceof Number z) {
+                return new Region("", Math.floorDiv(x.intValue(), 512), Math.floorDiv(z.intValue(), 512));
+            }
+        } catch (IOException | RuntimeException e) {
+            GithubBackupMod.LOGGER.debug("Could not read player position of {}: {}", worldDir.getName(),
+                    e.getMessage());
+        }
+        return new Region("", 0, 0);
+    }
+
+    static String dimensionFolder(String dimension) {
+        if (dimension == null || dimension.equals("minecraft:overworld")) {
+            return "";
+        }
+        if (dimension.equals("minecraft:the_nether")) {
+            return "DIM-1";
+        }
+        if (dimension.equals("minecraft:the_end")) {
+            return "DIM1";
+        }
+        int colon = dimension.indexOf(':');
+        return colon < 0 ? "dimensions/minecraft/" + dimension
+                : "dimensions/" + dimension.substring(0, colon) + "/" + dimension.substring(colon + 1);
+    }
+
+    private record Region(String dimension, int x, int z) {
+    }
+
+    private static Region region(String path) {
+        Matcher matcher = REGION_FILE.matcher(path);
+        if (!matcher.matches()) {
+            return null;
+        }
+        return new Region(matcher.group(1) == null ? "" : matcher.group(1), Integer.parseInt(matcher.group(2)),
+                Integer.parseInt(matcher.group(3)));
+    }
+
+    // Regions in rings around the player, other dimensions after the player's
+    // own (overworld, nether, end, then modded) in rings around their origin
+    private List<String> order(Collection<String> paths, Region player) {
+        return paths.stream()
+                .sorted(Comparator.comparingInt((String path) -> dimensionRank(path, player))
+                        .thenComparingInt(path -> distance(path, player))
+                        .thenComparing(Comparator.naturalOrder()))
+                .collect(Collectors.toList());
+    }
+
+    private static int dimensionRank(String path, Region player) {
+        Region region = region(path);
+        if (region == null) {
+            return -1;
+        }
+        if (region.dimension.equals(player.dimension)) {
+            return 0;
+        }
+        switch (region.dimension) {
+            case "":
+                return 1;
+            case "DIM-1":
+                return 2;
+            case "DIM1":
+                return 3;
+            default:
+                return 4;
+        }
+    }
+
+    private static int distance(String path, Region player) {
+        Region region = region(path);
+        if (region == null) {
+            return 0;
+        }
+        if (!region.dimension.equals(player.dimension)) {
+            return Math.max(Math.abs(region.x), Math.abs(region.z));
+        }
+        return Math.max(Math.abs(region.x - player.x), Math.abs(region.z - player.z));
+    }
+}
@@ -0,0 +1,161 @@
+package com.tomesh.worldsyncer.core;
+
+import com.tomesh.worldsyncer.GithubBackupMod;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.CredentialsProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * World repositories as bare repos in a folder on this machine, a NAS mount
+ * or any other path, reached over file://. Uses the same repo names as the
+ * GitHub backend; targets are {@code "local/<repo name>"}.
+ */
+public class LocalBackend implements SyncBackend {
+    static final String OWNER = "local";
+
+    private final Path root;
+
+    public LocalBackend(String directory) {
+        this.root = directory == null || directory.isBlank() ? null : Path.of(directory).toAbsolutePath();
+    }
+
+    @Override
+    public String getName() {
+        return "local folder";
+    }
+
+    @Override
+    public String getSetupProblem() {
+        return root == null ? "Local backup folder not configured in mod settings." : null;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        Files.createDirectories(root);
+    }
+
+    @Override
+    public String createTarget(String worldName) throws IOException {
+        connect();
+        String repoName = GithubBackend.repoName(worldName);
+        File bare = bareRepo(repoName).toFile();
+        if (!new File(bare, "HEAD").exists()) {
+            try {
+                Git.init().setBare(true).setDirectory(bare).setInitialBranch("main").call().close();
+            } catch (GitAPIException e) {
+                throw new IOException("Could not create " + bare + ": " + e.getMessage(), e);
+            }
+            GithubBackupMod.LOGGER.info("Created local world repository {}", bare);
+        }
+        allowPartialClones(bare);
+        return OWNER + "/" + repoName;
+    }
+
+    // What a lazy restore needs from the server side: clones without blobs,
+    // and blobs asked for by id afterwards
+    private static void allowPartialClones(File bare) throws IOException {
+        try (Repository repository = new FileRepositoryBuilder().setGitDir(bare).setBare().build()) {
+            StoredConfig config = repository.getConfig();
+            if (config.getBoolean("uploadpack", "allowfilter", false)
+                    && config.getBoolean("uploadpack", "allowanysha1inwant", false)) {
+                return;
+            }
+            config.setBoolean("uploadpack", null, "allowfilter", true);
+            config.setBoolean("uploadpack", null, "allowanysha1inwant", true);
+            config.save();
+        }
+    }
+
+    @Override
+    public Map<String, String> listTargets() throws IOException {
+        Map<String, String> targets = new HashMap<>();
+        if (!Files.isDirectory(root)) {
+            return targets;
+        }
+        try (DirectoryStream<Path> repos = Files.newDirectoryStream(root, RepoCatalog.REPO_PREFIX + "*.git")) {
+            for (Path repo : repos) {
+                String repoName = repo.getFileName().toString();
+                repoName = repoName.substring(0, repoName.length() - ".git".length());
+                targets.put(repoName.substring(RepoCatalog.REPO_PREFIX.length()).replace('-', ' '),
+                        OWNER + "/" + repoName);
+            }
+        }
+        return targets;
+    }
+
+    @Override
+    public void deleteTarget(String target) throws IOException {
+        Path bare = bareRepo(repoName(target));
+        if (!Files.exists(bare)) {
+            return;
+        }
+        Files.walkFileTree(bare, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public String remoteUrl(String target) {
+        return bareRepo(repoName(target)).toUri().toString();
+    }
+
+    @Override
+    public CredentialsProvider credentials() {
+        return null;
+    }
+
+    // Reads the refs straight from disk; nothing to batch
+    @Override
+    public Map<String, String> probeHeads(Map<String, String> targets) {
+        Map<String, String> heads = new HashMap<>();
+        for (Map.Entry<String, String> target : targets.entrySet()) {
+            File bare = bareRepo(repoName(target.getValue())).toFile();
+            if (!new File(bare, "HEAD").exists()) {
+                continue;
+            }
+            try (Repository repository = new FileRepositoryBuilder().setGitDir(bare).setMustExist(true).build()) {
+                ObjectId main = repository.resolve("refs/heads/main");
+                heads.put(target.getKey(), main == null ? RemoteHeadProbe.NO_BRANCH : main.name());
+            } catch (IOException e) {
+                GithubBackupMod.LOGGER.warn("Could not read {}: {}", bare, e.getMessage());
+            }
+        }
+        return heads;
+    }
+
+    private Path bareRepo(String repoName) {
+        return root.resolve(repoName + ".git");
+    }
+
+    // Any owner maps to the same repo name, so worlds set up against GitHub
+    // move to a local folder without reconfiguring them
+    private static String repoName(String target) {
+        return target.substring(target.indexOf('/') + 1);
+    }
+}
@@ -0,0 +1,307 @@
+package com.tomesh.worldsyncer.core;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Minimal reader and writer for Minecraft's NBT format, so world files can be
+ * inspected and rewritten off the game thread and before a world is loaded.
+ * Compounds become ordered maps, lists become {@link TagList}s (which keep
+ * their element type) and everything else its boxed value or array.
+ */
+final class Nbt {
+    static final int END = 0;
+    static final int BYTE = 1;
+    static final int SHORT = 2;
+    static final int INT = 3;
+    static final int LONG = 4;
+    static final int FLOAT = 5;
+    static final int DOUBLE = 6;
+    static final int BYTE_ARRAY = 7;
+    static final int STRING = 8;
+    static final int LIST = 9;
+    static final int COMPOUND = 10;
+    static final int INT_ARRAY = 11;
+    static final int LONG_ARRAY = 12;
+
+    private static final int MAX_DEPTH = 512;
+
+    /** A list tag; the element type matters for empty lists. */
+    static final class TagList extends ArrayList<Object> {
+        private static final long serialVersionUID = 1L;
+
+        final int elementType;
+
+        TagList(int elementType, int capacity) {
+            super(capacity);
+            this.elementType = elementType;
+        }
+    }
+
+    private Nbt() {
+    }
+
+    /** Reads a gzip-compressed file such as level.dat. */
+    static Map<String, Object> readCompressed(Path file) throws IOException {
+        try (InputStream in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return read(in);
+        }
+    }
+
+    /** Reads an uncompressed root compound; its name must be empty, as in every world file. */
+    static Map<String, Object> read(InputStream in) throws IOException {
+        DataInput data = new DataInputStream(in);
+        int type = data.readUnsignedByte();
+        if (type != COMPOUND) {
+            throw new IOException("NBT root is not a compound (type " + type + ")");
+        }
+        if (!data.readUTF().isEmpty()) {
+            throw new IOException("NBT root has a name");
+        }
+        return readCompound(data, 0);
+    }
+
+    /** Writes an uncompressed root compound with an empty name. */
+    static void write(Map<String, Object> root, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeByte(COMPOUND);
+        data.writeUTF("");
+        writePayload(data, root, 0);
+        data.flush();
+    }
+
+    private static Map<String, Object> readCompound(DataInput data, int depth) throws IOException {
+        Map<String, Object> compound = new LinkedHashMap<>();
+        int type;
+        while ((type = data.readUnsignedByte()) != END) {
+            String name = data.readUTF();
+            compound.put(name, readPayload(data, type, depth + 1));
+        }
+        return compound;
+    }
+
+    private static Object readPayload(DataInput data, int type, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IOException("NBT nested too deeply");
+        }
+        switch (type) {
+            case BYTE:
+                return data.readByte();
+            case SHORT:
+                return data.readShort();
+            case INT:
+                return data.readInt();
+            case LONG:
+                return data.readLong();
+            case FLOAT:
+                return data.readFloat();
+            case DOUBLE:
+                return data.readDouble();
+            case BYTE_ARRAY: {
+                byte[] array = new byte[length(data)];
+                data.readFully(array);
+                return array;
+            }
+            case STRING:
+                return data.readUTF();
+            case LIST: {
+                int elementType = data.readUnsignedByte();
+                int length = data.readInt();
+                TagList list = new TagList(elementType, Math.max(0, Math.min(length, 1024)));
+                for (int i = 0; i < length; i++) {
+                    list.add(readPayload(data, elementType, depth + 1));
+                }
+                return list;
+            }
+            case COMPOUND:
+                return readCompound(data, depth);
+            case INT_ARRAY: {
+                int[] array = new int[length(data)];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = data.readInt();
+                }
+                return array;
+            }
+            case LONG_ARRAY: {
+                long[] array = new long[length(data)];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = data.readLong();
+                }
+                return array;
+            }
+            default:
+                throw new IOException("Unknown NBT tag type " + type);
+        }
+    }
+
+    private static int length(DataInput data) throws IOException {
+        int length = data.readInt();
+        if (length < 0) {
+            throw new IOException("Negative NBT array length");
+        }
+        return length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writePayload(DataOutput data, Object value, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IOException("NBT nested too deeply");
+        }
+        if (value instanceof Byte b) {
+            data.writeByte(b);
+        } else if (value instanceof Short s) {
+            data.writeShort(s);
+        } else if (value instanceof Integer i) {
+            data.writeInt(i);
+        } else if (value instanceof Long l) {
+            data.writeLong(l);
+        } else if (value instanceof Float f) {
+            data.writeInt(Float.floatToRawIntBits(f));
+        } else if (value instanceof Double d) {
+            data.writeLong(Double.doubleToRawLongBits(d));
+        } else if (value instanceof byte[] array) {
+            data.writeInt(array.length);
+            data.write(array);
+        } else if (value instanceof String s) {
+            data.writeUTF(s);
+        } else if (value instanceof TagList list) {
+            data.writeByte(list.elementType);
+            data.writeInt(list.size());
+            for (Object element : list) {
+                writePayload(data, element, depth + 1);
+            }
+        } else if (value instanceof Map<?, ?> compound) {
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) compound).entrySet()) {
+                data.writeByte(typeOf(entry.getValue()));
+                data.writeUTF(entry.getKey());
+                writePayload(data, entry.getValue(), depth + 1);
+            }
+            data.writeByte(END);
+        } else if (value instanceof int[] array) {
+            data.writeInt(array.length);
+            for (int i : array) {
+                data.writeInt(i);
+            }
+        } else if (value instanceof long[] array) {
+            data.writeInt(array.length);
+            for (long l : array) {
+                data.writeLong(l);
+            }
+        } else {
+            throw new IOException("Not an NBT value: " + value);
+        }
+    }
+
+    private static int typeOf(Object value) throws IOException {
+        if (value instanceof Byte) {
+            return BYTE;
+        } else if (value instanceof Short) {
+            return SHORT;
+        } else if (value instanceof Integer) {
+            return INT;
+        } else if (value instanceof Long) {
+            return LONG;
+        } else if (value instanceof Float) {
+            return FLOAT;
+        } else if (value instanceof Double) {
+            return DOUBLE;
+        } else if (value instanceof byte[]) {
+            return BYTE_ARRAY;
+        } else if (value instanceof String) {
+            return STRING;
+        } else if (value instanceof TagList) {
+            return LIST;
+        } else if (value instanceof Map) {
+            return COMPOUND;
+        } else if (value instanceof int[]) {
+            return INT_ARRAY;
+        } else if (value instanceof long[]) {
+            return LONG_ARRAY;
+        }
+        throw new IOException("Not an NBT value: " + value);
+    }
+
+    /** The value at a path of compound keys, or null if any step is missing. */
+    static Object get(Map<String, Object> root, String... keys) {
+        Object value = root;
+        for (String key : keys) {
+            if (!(value instanceof Map<?, ?> map)) {
+                return null;
+            }
+            value = map.get(key);
+        }
+        return value;
+    }
+
+    /** Structural equality, comparing arrays by content and compounds regardless of key order. */
+    static boolean deepEquals(Object a, Object b) {
+        if (a instanceof Map<?, ?> mapA && b instanceof Map<?, ?> mapB) {
+            if (mapA.size() != mapB.size()) {
+                return false;
+            }
+            for (Map.Entry<?, ?> entry : mapA.entrySet()) {
+                if (!mapB.containsKey(entry.getKey()) || !deepEquals(entry.getValue(), mapB.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof TagList listA && b instanceof TagList listB) {
+            if (listA.elementType != listB.elementType || listA.size() != listB.size()) {
+                return false;
+            }
+            Iterator<Object> itB = listB.iterator();
+            for (Object element : listA) {
+                if (!deepEquals(element, itB.next())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof Float fa && b instanceof Float fb) {
+            return Float.floatToRawIntBits(fa) == Float.floatToRawIntBits(fb);
+        }
+        if (a instanceof Double da && b instanceof Double db) {
+            return Double.doubleToRawLongBits(da) == Double.doubleToRawLongBits(db);
+        }
+        return Arrays.deepEquals(new Object[] { a }, new Object[] { b });
+    }
+
+    /** A copy with the keys of every compound sorted, the canonical order for storage. */
+    @SuppressWarnings("unchecked")
+    static Object sorted(Object value) {
+        if (value instanceof Map<?, ?> compound) {
+            List<String> keys = new ArrayList<>((Set<String>) compound.keySet());
+            keys.sort(null);
+            Map<String, Object> copy = new LinkedHashMap<>();
+            for (String key : keys) {
+                copy.put(key, sorted(compound.get(key)));
+            }
+            return copy;
+        }
+        if (value instanceof TagList list) {
+            TagList copy = new TagList(list.elementType, list.size());
+            for (Object element : list) {
+                copy.add(sorted(element));
+            }
+            return copy;
+        }
+        return value;
+    }
+}
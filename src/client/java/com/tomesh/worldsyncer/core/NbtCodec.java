@@ -0,0 +1,156 @@
+package com.tomesh.worldsyncer.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores gzip-compressed NBT files (level.dat, playerdata/*.dat, data/*.dat)
+ * uncompressed and with compound keys sorted, so Git can delta them against
+ * their earlier versions. Fields the game moves on with every save (last
+ * played, world time, weather and trader timers in level.dat) go into an
+ * entry of their own: a save in which only those changed leaves the blob of
+ * the main entry as it was.
+ * <p>
+ * Entries: {@code nbt} (the canonical tree without the volatile fields) and
+ * {@code volatile} (just those fields, at their paths). Decoding merges both
+ * and compresses the result again: the same tree the game wrote, though not
+ * necessarily the same bytes.
+ */
+public class NbtCodec implements StorageCodec {
+    private static final Pattern HANDLED =
+            Pattern.compile("level\\.dat|(?:.+/)?(?:playerdata|data)/[^/]+\\.dat");
+    private static final List<String[]> VOLATILE = List.of(
+            new String[] { "Data", "LastPlayed" },
+            new String[] { "Data", "Time" },
+            new String[] { "Data", "DayTime" },
+            new String[] { "Data", "rainTime" },
+            new String[] { "Data", "thunderTime" },
+            new String[] { "Data", "clearWeatherTime" },
+            new String[] { "Data", "WanderingTraderSpawnDelay" });
+
+    @Override
+    public String suffix() {
+        return ".nbt";
+    }
+
+    @Override
+    public boolean handles(String path) {
+        return HANDLED.matcher(path).matches();
+    }
+
+    @Override
+    public Map<String, byte[]> encode(byte[] content) throws IOException {
+        if (content.length < 2 || (content[0] & 0xFF) != 0x1F || (content[1] & 0xFF) != 0x8B) {
+            // Not gzip; some mods write their data files uncompressed
+            return null;
+        }
+        Map<String, Object> tree;
+        try {
+            tree = readTree(gunzip(content));
+        } catch (IOException e) {
+            return null;
+        }
+        if (tree == null) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> stable = (Map<String, Object>) Nbt.sorted(tree);
+        Map<String, Object> volatileFields = new LinkedHashMap<>();
+        for (String[] path : VOLATILE) {
+            move(stable, volatileFields, path, 0);
+        }
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("nbt", serialize(stable));
+        if (!volatileFields.isEmpty()) {
+            entries.put("volatile", serialize(volatileFields));
+        }
+        // Anything the reader or writer would not carry over is kept as is instead
+        if (!Nbt.deepEquals(tree, readTree(gunzip(decode(entries))))) {
+            return null;
+        }
+        return entries;
+    }
+
+    @Override
+    public byte[] decode(Map<String, byte[]> entries) throws IOException {
+        byte[] nbt = entries.get("nbt");
+        if (nbt == null) {
+            throw new IOException("Incomplete NBT entry");
+        }
+        Map<String, Object> tree = Nbt.read(new ByteArrayInputStream(nbt));
+        byte[] volatileFields = entries.get("volatile");
+        if (volatileFields != null) {
+            merge(tree, Nbt.read(new ByteArrayInputStream(volatileFields)));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(nbt.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            Nbt.write(tree, gzip);
+        }
+        return out.toByteArray();
+    }
+
+    // Null if the data is not exactly one root compound
+    private static Map<String, Object> readTree(byte[] raw) throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(raw);
+        Map<String, Object> tree = Nbt.read(in);
+        return in.available() == 0 ? tree : null;
+    }
+
+    // Stops short of sizes that would need splitting, which also bounds what a
+    // corrupt or hostile file can inflate to
+    private static byte[] gunzip(byte[] content) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(content))) {
+            byte[] raw = in.readNBytes((int) SplitFileCodec.SPLIT_THRESHOLD + 1);
+            if (raw.length > SplitFileCodec.SPLIT_THRESHOLD) {
+                throw new IOException("NBT too large to store uncompressed");
+            }
+            return raw;
+        }
+    }
+
+    private static byte[] serialize(Map<String, Object> tree) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Nbt.write(tree, out);
+        return out.toByteArray();
+    }
+
+    // Moves the value at path from one tree to the same path in another
+    @SuppressWarnings("unchecked")
+    private static void move(Map<String, Object> from, Map<String, Object> to, String[] path, int depth) {
+        Object value = from.get(path[depth]);
+        if (value == null) {
+            return;
+        }
+        if (depth == path.length - 1) {
+            from.remove(path[depth]);
+            to.put(path[depth], value);
+        } else if (value instanceof Map) {
+            Map<String, Object> child = (Map<String, Object>) to.computeIfAbsent(path[depth],
+                    k -> new LinkedHashMap<String, Object>());
+            move((Map<String, Object>) value, child, path, depth + 1);
+            if (child.isEmpty()) {
+                to.remove(path[depth]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void merge(Map<String, Object> into, Map<String, Object> fields) {
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            Object existing = into.get(field.getKey());
+            if (existing instanceof Map && field.getValue() instanceof Map) {
+                merge((Map<String, Object>) existing, (Map<String, Object>) field.getValue());
+            } else {
+                into.put(field.getKey(), field.getValue());
+            }
+        }
+    }
+}
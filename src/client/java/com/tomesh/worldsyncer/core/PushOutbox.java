@@ -0,0 +1,190 @@
+package com.tomesh.worldsyncer.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tomesh.worldsyncer.GithubBackupMod;
+
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Worlds whose backup was committed but could not be pushed, kept in the
+ * config folder until a push succeeds. An entry only says that main is ahead
+ * of the remote, so any number of failed backups of a world coalesce into one
+ * push of its latest commit. Retries back off exponentially with jitter.
+ * Only failures that can pass on their own (see {@link #isTransient}) are
+ * queued; a revoked token or deleted repository fails the same way every time.
+ */
+public class PushOutbox {
+    private static final long FIRST_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_RETRY_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    // HTTP 5xx as JGit reports it, e.g. "https://github.com/a/b.git: 502 Bad Gateway"
+    private static final Pattern SERVER_ERROR = Pattern.compile(":\\s*5\\d\\d\\b");
+
+    private static PushOutbox instance;
+
+    private final Path file;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private State state;
+    // Worlds with a retry queued, so one slow push is not queued again
+    private final Set<String> inFlight = new HashSet<>();
+
+    public PushOutbox(Path file) {
+        this.file = file;
+    }
+
+    public static synchronized PushOutbox get() {
+        if (instance == null) {
+            instance = new PushOutbox(FabricLoader.getInstance().getConfigDir().resolve("world-syncer-outbox.json"));
+        }
+        return instance;
+    }
+
+    /** On-disk form; public fields for Jackson. */
+    public static class State {
+        public Map<String, Pending> worlds = new LinkedHashMap<>();
+    }
+
+    public static class Pending {
+        public String repoFullName;
+        // First failed push since the last successful one
+        public long since;
+        public int attempts;
+        public long nextAttempt;
+        public String lastError;
+    }
+
+    /** Records a failed push of a world and schedules the next attempt. */
+    public synchronized void recordFailure(String worldName, String repoFullName, String error) {
+        Pending pending = load().worlds.computeIfAbsent(worldName, k -> new Pending());
+        long now = System.currentTimeMillis();
+        if (pending.attempts == 0) {
+            pending.since = now;
+        }
+        pending.repoFullName = repoFullName;
+        pending.attempts++;
+        pending.lastError = error;
+        pending.nextAttempt = now + backoff(pending.attempts);
+        inFlight.remove(worldName);
+        save();
+        GithubBackupMod.LOGGER.info("Push of {} queued for retry #{} in {} s", worldName, pending.attempts,
+                TimeUnit.MILLISECONDS.toSeconds(pending.nextAttempt - now));
+    }
+
+    /** Drops a world after a successful push. */
+    public synchronized void recordSuccess(String worldName) {
+        inFlight.remove(worldName);
+        if (load().worlds.remove(worldName) != null) {
+            save();
+            GithubBackupMod.LOGGER.info("Pending push of {} delivered", worldName);
+        }
+    }
+
+    /** Drops a world whose push cannot succeed by retrying. */
+    public synchronized void discard(String worldName, String error) {
+        inFlight.remove(worldName);
+        if (load().worlds.remove(worldName) != null) {
+            save();
+            GithubBackupMod.LOGGER.info("Dropped pending push of {}: {}", worldName, error);
+        }
+    }
+
+    /**
+     * Whether a failed push may succeed later without the user doing anything:
+     * no connection, a timeout, or a server error (5xx). Rejected credentials,
+     * a missing repository or a rejected update are not.
+     */
+    public static boolean isTransient(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof SocketException || e instanceof UnknownHostException
+                    || e instanceof InterruptedIOException) {
+                return true;
+            }
+            String message = e.getMessage();
+            if (message != null && (SERVER_ERROR.matcher(message).find() || message.contains("timed out")
+                    || message.contains("Connection reset"))) {
+                return true;
+            }
+            if (e.getCause() == e) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /** Pending push of a world, or null. The returned entry must not be modified. */
+    public synchronized Pending getPending(String worldName) {
+        return load().worlds.get(worldName);
+    }
+
+    public synchronized Map<String, Pending> getAllPending() {
+        return new LinkedHashMap<>(load().worlds);
+    }
+
+    /** Queues a retry for every world whose next attempt is due. */
+    public synchronized void retryDue(GithubService service) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Pending> entry : load().worlds.entrySet()) {
+            String worldName = entry.getKey();
+            Pending pending = entry.getValue();
+            if (pending.nextAttempt > now || !inFlight.add(worldName)) {
+                continue;
+            }
+            service.retryPush(worldName, pending.repoFullName)
+                    .whenComplete((v, ex) -> {
+                        synchronized (this) {
+                            inFlight.remove(worldName);
+                        }
+                    });
+        }
+    }
+
+    // Doubles from 30 s up to an hour; the jitter keeps worlds that failed
+    // together from all retrying in the same second
+    static long backoff(int attempts) {
+        long delay = FIRST_RETRY_MILLIS << Math.min(attempts - 1, 16);
+        delay = Math.min(delay, MAX_RETRY_MILLIS);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private State load() {
+        if (state == null) {
+            if (Files.exists(file)) {
+                try {
+                    state = mapper.readValue(file.toFile(), State.class);
+                } catch (IOException e) {
+                    GithubBackupMod.LOGGER.warn("Ignoring unreadable push outbox: {}", e.getMessage());
+                }
+            }
+            if (state == null) {
+                state = new State();
+            }
+        }
+        return state;
+    }
+
+    private void save() {
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            mapper.writeValue(tmp.toFile(), state);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            GithubBackupMod.LOGGER.warn("Could not save push outbox: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.tomesh.worldsyncer.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.transport.CredentialsProvider;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the tip of main for many world repositories at once: one GraphQL
+ * request per batch of repos instead of a fetch per world. {@link #lsRemote}
+ * is the per-repo fallback when GraphQL is unavailable.
+ */
+public class RemoteHeadProbe {
+    /** Result value for a repository that exists but has no main branch. */
+    public static final String NO_BRANCH = "";
+
+    // GitHub limits the node count per query; 50 aliased repos stays well below it
+    private static final int BATCH_SIZE = 50;
+
+    /**
+     * Maps each key of {@code repos} (a world name) to the SHA of main in its
+     * repository ("owner/name"), or {@link #NO_BRANCH}. Repos the query could
+     * not resolve (e.g. deleted ones) are left out. Runs as a background
+     * request, so a low API budget defers it in favour of {@link #lsRemote}.
+     */
+    public Map<String, String> probe(GithubApiClient api, Map<String, String> repos) throws IOException {
+        Map<String, String> heads = new HashMap<>();
+        List<Map.Entry<String, String>> entries = new ArrayList<>(repos.entrySet());
+        for (int start = 0; start < entries.size(); start += BATCH_SIZE) {
+            List<Map.Entry<String, String>> batch = entries.subList(start,
+                    Math.min(entries.size(), start + BATCH_SIZE));
+            JsonNode data = api.graphql(buildQuery(batch), GithubApiClient.Priority.BACKGROUND);
+            for (int i = 0; i < batch.size(); i++) {
+                JsonNode repo = data.path("r" + i);
+                if (repo.isMissingNode() || repo.isNull()) {
+                    continue;
+                }
+                JsonNode oid = repo.path("ref").path("target").path("oid");
+                heads.put(batch.get(i).getKey(), oid.isTextual() ? oid.asText() : NO_BRANCH);
+            }
+        }
+        return heads;
+    }
+
+    /** SHA of main via a plain ls-remote, {@link #NO_BRANCH} if there is none. */
+    public static String lsRemote(String remoteUrl, CredentialsProvider credentials) throws GitAPIException {
+        Map<String, Ref> refs = Git.lsRemoteRepository()
+                .setRemote(remoteUrl)
+                .setHeads(true)
+                .setCredentialsProvider(credentials)
+                .callAsMap();
+        Ref main = refs.get("refs/heads/main");
+        return main == null || main.getObjectId() == null ? NO_BRANCH : main.getObjectId().name();
+    }
+
+    private static String buildQuery(List<Map.Entry<String, String>> batch) {
+        StringBuilder query = new StringBuilder("query {");
+        for (int i = 0; i < batch.size(); i++) {
+            String fullName = batch.get(i).getValue();
+            int slash = fullName.indexOf('/');
+            query.append(" r").append(i).append(": repository(owner: ")
+                    .append(quote(fullName.substring(0, Math.max(slash, 0))))
+                    .append(", name: ").append(quote(fullName.substring(slash + 1)))
+                    .append(") { ref(qualifiedName: \"refs/heads/main\") { target { oid } } }");
+        }
+        return query.append(" }").toString();
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,245 @@
+package com.tomesh.worldsyncer.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tomesh.worldsyncer.GithubBackupMod;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cached list of the user's world repositories, kept in memory and in the
+ * config folder. Within the TTL the cache is returned as is; after that every
+ * page of the listing is revalidated with its ETag, and GitHub answers
+ * unchanged pages with 304, which does not count against the rate limit.
+ * A revalidation deferred for a low API budget is run again once the limit
+ * resets.
+ */
+public class RepoCatalog {
+    static final String REPO_PREFIX = "minecraft-world-";
+    // Every affiliation, as the API's default: a world backed up to a repo of an
+    // organization or shared by a collaborator must not look deleted
+    private static final String FIRST_PAGE = GithubApiClient.API_URL
+            + "/user/repos?affiliation=owner,collaborator,organization_member&per_page=100";
+    // GitHub's reset time has one second resolution
+    private static final long REFRESH_SLACK_MILLIS = 2000;
+    private static final Pattern NEXT_LINK = Pattern.compile("<([^>]+)>;\\s*rel=\"next\"");
+
+    private final Path file;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private State state;
+    private boolean refreshScheduled;
+
+    public RepoCatalog(Path file) {
+        this.file = file;
+    }
+
+    /** On-disk form; public fields for Jackson. */
+    public static class State {
+        public String account = "";
+        public long fetchedAt;
+        public List<Page> pages = new ArrayList<>();
+        // Repos the mod created that no listing has included yet; GitHub's
+        // listing can lag behind a creation. Each revalidation keeps the ones
+        // its pages still lack
+        public Map<String, String> created = new LinkedHashMap<>();
+    }
+
+    public static class Page {
+        public String url;
+        public String etag;
+        public String next;
+        public Map<String, String> repos = new LinkedHashMap<>();
+    }
+
+    /**
+     * World name to full repository name for every world repo of the token's
+     * account. Falls back to the last known listing if GitHub cannot be
+     * reached or the API budget is low.
+     */
+    public synchronized Map<String, String> list(GithubApiClient api, long ttlMillis) throws IOException {
+        String account = accountKey(api.token());
+        State current = load(account);
+        if (!current.pages.isEmpty() && System.currentTimeMillis() - current.fetchedAt < ttlMillis) {
+            return merge(current);
+        }
+        try {
+            state = revalidate(api, current);
+            save();
+        } catch (GithubApiClient.DeferredException e) {
+            GithubBackupMod.LOGGER.info("Repository list refresh deferred, using cached one: {}", e.getMessage());
+            scheduleRefresh(api, e.getRetryAtMillis());
+            return merge(current);
+        } catch (IOException e) {
+            if (current.pages.isEmpty() && current.created.isEmpty()) {
+                throw e;
+            }
+            GithubBackupMod.LOGGER.warn("Could not refresh repository list, using cached one: {}", e.getMessage());
+            return merge(current);
+        }
+        return merge(state);
+    }
+
+    /**
+     * Records a repository created by the mod and forces the next listing to
+     * revalidate, since every page ETag has changed.
+     */
+    public synchronized void recordCreated(String token, String worldName, String fullName) {
+        State current = load(accountKey(token));
+        current.created.put(worldName, fullName);
+        current.fetchedAt = 0;
+        try {
+            save();
+        } catch (IOException e) {
+            GithubBackupMod.LOGGER.warn("Could not save repository list cache: {}", e.getMessage());
+        }
+    }
+
+    // Runs the deferred revalidation on the sync scheduler once the limit resets,
+    // so the next listing is fresh without waiting for the TTL again
+    private void scheduleRefresh(GithubApiClient api, long retryAtMillis) {
+        if (refreshScheduled) {
+            return;
+        }
+        refreshScheduled = true;
+        long delay = Math.max(0, retryAtMillis - System.currentTimeMillis()) + REFRESH_SLACK_MILLIS;
+        Executor later = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS,
+                job -> SyncScheduler.get().submit(SyncScheduler.GLOBAL_KEY, job));
+        later.execute(() -> {
+            synchronized (this) {
+                refreshScheduled = false;
+            }
+            try {
+                list(api, 0);
+            } catch (IOException e) {
+                GithubBackupMod.LOGGER.warn("Deferred repository list refresh failed: {}", e.getMessage());
+            }
+        });
+    }
+
+    private State revalidate(GithubApiClient api, State cached) throws IOException {
+        Map<String, Page> cachedPages = new HashMap<>();
+        for (Page page : cached.pages) {
+            if (page.url != null) {
+                cachedPages.put(page.url, page);
+            }
+        }
+        State fresh = new State();
+        fresh.account = cached.account;
+        int notModified = 0;
+        // Without a cached listing there is nothing to fall back to
+        GithubApiClient.Priority priority = cached.pages.isEmpty() ? GithubApiClient.Priority.INTERACTIVE
+                : GithubApiClient.Priority.BACKGROUND;
+        String url = FIRST_PAGE;
+        while (url != null) {
+            Page previous = cachedPages.get(url);
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url));
+            if (previous != null && previous.etag != null) {
+                request.header("If-None-Match", previous.etag);
+            }
+            GithubApiClient.Response response = api.send(request, priority);
+            Page page;
+            if (response.status == 304 && previous != null) {
+                page = previous;
+                notModified++;
+            } else if (response.status == 200) {
+                page = parsePage(url, response);
+            } else {
+                throw new IOException("GitHub returned HTTP " + response.status + " listing repositories");
+            }
+            fresh.pages.add(page);
+            url = page.next;
+        }
+        Map<String, String> listed = merge(fresh);
+        for (Map.Entry<String, String> entry : cached.created.entrySet()) {
+            if (!listed.containsValue(entry.getValue())) {
+                fresh.created.put(entry.getKey(), entry.getValue());
+            }
+        }
+        fresh.fetchedAt = System.currentTimeMillis();
+        GithubBackupMod.LOGGER.info("Repository list revalidated: {} page(s), {} unchanged", fresh.pages.size(),
+                notModified);
+        return fresh;
+    }
+
+    private Page parsePage(String url, GithubApiClient.Response response) throws IOException {
+        Page page = new Page();
+        page.url = url;
+        page.etag = response.headers.firstValue("ETag").orElse(null);
+        String link = response.headers.firstValue("Link").orElse("");
+        Matcher next = NEXT_LINK.matcher(link);
+        page.next = next.find() ? next.group(1) : null;
+        for (JsonNode repo : response.json()) {
+            String name = repo.path("name").asText("");
+            if (name.startsWith(REPO_PREFIX)) {
+                // Extract world folder name from repo name (replace dashes with spaces)
+                page.repos.put(name.substring(REPO_PREFIX.length()).replace('-', ' '),
+                        repo.path("full_name").asText());
+            }
+        }
+        return page;
+    }
+
+    private static Map<String, String> merge(State state) {
+        Map<String, String> result = new HashMap<>();
+        for (Page page : state.pages) {
+            result.putAll(page.repos);
+        }
+        result.putAll(state.created);
+        return result;
+    }
+
+    private State load(String account) {
+        if (state == null && Files.exists(file)) {
+            try {
+                state = mapper.readValue(file.toFile(), State.class);
+            } catch (IOException e) {
+                GithubBackupMod.LOGGER.warn("Ignoring unreadable repository list cache: {}", e.getMessage());
+            }
+        }
+        if (state == null || !account.equals(state.account)) {
+            // Never reuse another account's listing
+            state = new State();
+            state.account = account;
+        }
+        return state;
+    }
+
+    private void save() throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        mapper.writeValue(tmp.toFile(), state);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // The cache file must not contain the token itself
+    private static String accountKey(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.tomesh.worldsyncer.core;
+
+import com.tomesh.worldsyncer.GithubBackupMod;
+import com.tomesh.worldsyncer.config.ModConfig;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.JGitInternalException;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Idle-time gc/repack of world repositories. Every backup adds loose objects
+ * and every push or fetch a small pack; once a repository has too many of
+ * either, it is repacked on its world's sync queue, but only while no world
+ * is loaded so the game never competes with it for disk and CPU.
+ */
+public class RepoMaintenance {
+    // Roughly where object lookups start to slow down noticeably; far below
+    // git's own gc.auto so worlds stay fast between sessions
+    private static final int LOOSE_OBJECT_LIMIT = 500;
+    private static final int PACK_LIMIT = 10;
+    private static final long RECHECK_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private static RepoMaintenance instance;
+
+    private final Map<String, Long> lastChecked = new ConcurrentHashMap<>();
+
+    private RepoMaintenance() {
+    }
+
+    public static synchronized RepoMaintenance get() {
+        if (instance == null) {
+            instance = new RepoMaintenance();
+        }
+        return instance;
+    }
+
+    /**
+     * Queues a check for every given world not checked recently. {@code idle}
+     * is consulted again right before each gc starts.
+     */
+    public void checkWorlds(Path savesDir, Collection<String> worldNames, BooleanSupplier idle) {
+        long now = System.currentTimeMillis();
+        for (String worldName : worldNames) {
+            File gitDir = savesDir.resolve(worldName).resolve(".git").toFile();
+            if (!new File(gitDir, "config").exists()
+                    || now - lastChecked.getOrDefault(worldName, 0L) < RECHECK_MILLIS) {
+                continue;
+            }
+            lastChecked.put(worldName, now);
+            SyncScheduler.get().submit(ModConfig.worldKey(worldName), () -> {
+                if (!idle.getAsBoolean()) {
+                    // Try again on the next idle check
+                    lastChecked.remove(worldName);
+                    return;
+                }
+                maintain(gitDir.getParentFile());
+            });
+        }
+    }
+
+    private static void maintain(File worldDir) {
+        try (Git git = Git.open(worldDir)) {
+            if (LazyRestore.isPartial(git.getRepository())) {
+                // gc reads every object it keeps, including blobs never fetched
+                GithubBackupMod.LOGGER.debug("Skipping maintenance of partial clone {}", worldDir.getName());
+                return;
+            }
+            Properties before = git.gc().getStatistics();
+            long loose = count(before, "numberOfLooseObjects");
+            long packs = count(before, "numberOfPackFiles");
+            if (loose < LOOSE_OBJECT_LIMIT && packs < PACK_LIMIT) {
+                return;
+            }
+            ModConfig config = GithubBackupMod.getConfig();
+            boolean aggressive = config != null && config.gcAggressive;
+            int window = config != null ? config.gcDeltaWindow : 10;
+            // Only this Repository instance sees the override
+            git.getRepository().getConfig().setInt(ConfigConstants.CONFIG_PACK_SECTION, null,
+                    ConfigConstants.CONFIG_KEY_WINDOW, window);
+            git.getRepository().getConfig().setInt(ConfigConstants.CONFIG_GC_SECTION, null, "aggressiveWindow",
+                    window);
+            long lookupBefore = timeTipLookup(git.getRepository());
+            long start = System.nanoTime();
+            git.gc().setAggressive(aggressive).call();
+            long gcMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            long lookupAfter = timeTipLookup(git.getRepository());
+            Properties after = git.gc().getStatistics();
+            long reclaimed = size(before) - size(after);
+            SyncMetrics.recordMaintenance(reclaimed);
+            GithubBackupMod.LOGGER.info(
+                    "Repacked {} in {} ms: loose objects {} -> {}, packs {} -> {}, reclaimed {} KiB; "
+                            + "looking up the latest backup took {} ms before, {} ms after",
+                    worldDir.getName(), gcMillis, loose, count(after, "numberOfLooseObjects"), packs,
+                    count(after, "numberOfPackFiles"), reclaimed / 1024, lookupBefore, lookupAfter);
+        } catch (IOException | GitAPIException | JGitInternalException e) {
+            GithubBackupMod.LOGGER.warn("Repository maintenance failed for {}: {}", worldDir.getName(),
+                    e.getMessage());
+        }
+    }
+
+    // Time to resolve every object of main's tree: the lookups restore, staging
+    // and push negotiation make, and what loose objects and many packs slow down
+    private static long timeTipLookup(Repository repository) throws IOException {
+        ObjectId main = repository.resolve("refs/heads/main");
+        if (main == null) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        try (RevWalk walk = new RevWalk(repository); ObjectReader reader = repository.newObjectReader();
+                TreeWalk tree = new TreeWalk(reader)) {
+            tree.setRecursive(true);
+            tree.addTree(walk.parseCommit(main).getTree());
+            while (tree.next()) {
+                reader.getObjectSize(tree.getObjectId(0), ObjectReader.OBJ_ANY);
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static long size(Properties statistics) {
+        return count(statistics, "sizeOfLooseObjects") + count(statistics, "sizeOfPackedObjects");
+    }
+
+    private static long count(Properties statistics, String key) {
+        Object value = statistics.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+}
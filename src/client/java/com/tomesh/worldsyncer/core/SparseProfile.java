@@ -0,0 +1,116 @@
+package com.tomesh.worldsyncer.core;
+
+import com.tomesh.worldsyncer.GithubBackupMod;
+
+import org.eclipse.jgit.ignore.IgnoreNode;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * The parts of a world this computer keeps. Stored as git's own
+ * .git/info/sparse-checkout file (non-cone patterns: "/*", then "!/DIM-1" for
+ * each excluded folder and "/DIM-1/region" for each path brought back), so
+ * the stat cache and the restorers of a world read it next to its index.
+ * <p>
+ * Files outside the profile stay in the repository as they are: a backup
+ * neither adds nor deletes them, and a restore does not write them.
+ */
+public final class SparseProfile {
+    static final String FILE = "info/sparse-checkout";
+
+    private static final SparseProfile FULL = new SparseProfile(null);
+
+    // Null keeps everything
+    private final IgnoreNode patterns;
+
+    private SparseProfile(IgnoreNode patterns) {
+        this.patterns = patterns;
+    }
+
+    /** The profile recorded in a world's repository; everything if there is none. */
+    public static SparseProfile load(File worldDir) {
+        File file = new File(worldDir, ".git/" + FILE);
+        if (!file.exists()) {
+            return FULL;
+        }
+        try {
+            IgnoreNode patterns = new IgnoreNode();
+            patterns.parse(new ByteArrayInputStream(Files.readAllBytes(file.toPath())));
+            return new SparseProfile(patterns);
+        } catch (IOException e) {
+            GithubBackupMod.LOGGER.warn("Ignoring unreadable sparse profile {}: {}", file, e.getMessage());
+            return FULL;
+        }
+    }
+
+    /**
+     * Records a profile in a world's repository, removing it when nothing is
+     * excluded. Returns true if it differs from the one recorded before.
+     */
+    public static boolean write(File worldDir, List<String> excludes, List<String> includes) throws IOException {
+        File file = new File(worldDir, ".git/" + FILE);
+        if (excludes == null || excludes.isEmpty()) {
+            return Files.deleteIfExists(file.toPath());
+        }
+        StringBuilder content = new StringBuilder("/*\n");
+        for (String folder : excludes) {
+            content.append("!/").append(normalize(folder)).append('\n');
+        }
+        if (includes != null) {
+            for (String folder : includes) {
+                content.append('/').append(normalize(folder)).append('\n');
+            }
+        }
+        String text = content.toString();
+        if (file.exists() && text.equals(Files.readString(file.toPath(), StandardCharsets.UTF_8))) {
+            return false;
+        }
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.writeString(file.toPath(), text, StandardCharsets.UTF_8);
+        return true;
+    }
+
+    private static String normalize(String folder) {
+        String path = folder.trim().replace('\\', '/');
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+    public boolean isFull() {
+        return patterns == null;
+    }
+
+    /**
+     * Whether a world file (a path relative to the world folder) is kept here.
+     * The pattern matching the path itself decides, else the nearest parent
+     * folder a pattern matches.
+     */
+    public boolean includes(String path) {
+        if (patterns == null) {
+            return true;
+        }
+        boolean directory = false;
+        while (true) {
+            IgnoreNode.MatchResult match = patterns.isIgnored(path, directory);
+            if (match != IgnoreNode.MatchResult.CHECK_PARENT) {
+                return match == IgnoreNode.MatchResult.IGNORED;
+            }
+            int slash = path.lastIndexOf('/');
+            if (slash < 0) {
+                return false;
+            }
+            path = path.substring(0, slash);
+            directory = true;
+        }
+    }
+}
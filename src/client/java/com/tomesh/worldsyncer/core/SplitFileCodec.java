@@ -0,0 +1,225 @@
+package com.tomesh.worldsyncer.core;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.util.io.LimitedInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stores files too large for a single blob as fixed-size parts, since GitHub
+ * rejects pushes containing any blob over 100 MB.
+ * <p>
+ * Entries: {@code manifest} (file length and part count) and
+ * {@code part.<n>} (consecutive {@link #PART_BYTES} slices, the last one
+ * shorter). Parts are content-addressed by Git, so a large file that only
+ * changed near its end re-uploads only the parts that differ.
+ * <p>
+ * Backups and restores go through {@link #insert} and {@link #restore}, which
+ * stream the parts between the file and the object database; the files this
+ * codec is for can be larger than the heap, or than a byte array.
+ */
+public class SplitFileCodec implements StorageCodec {
+    /** Files above this size are split; GitHub warns about blobs over 50 MB. */
+    static final long SPLIT_THRESHOLD = 50L * 1024 * 1024;
+    static final int PART_BYTES = 16 * 1024 * 1024;
+
+    @Override
+    public String suffix() {
+        return ".parts";
+    }
+
+    @Override
+    public boolean handles(String path) {
+        return true;
+    }
+
+    /** Whether a file of this size must be split to be pushed. */
+    public boolean isOversized(long size) {
+        return size > SPLIT_THRESHOLD;
+    }
+
+    /** Entry blobs of a file stored by {@link #insert}. */
+    public static final class Inserted {
+        public final Map<String, ObjectId> entries = new LinkedHashMap<>();
+        public final Map<String, Long> sizes = new LinkedHashMap<>();
+        /** The id the file has as a single blob, as the stat cache records it. */
+        public ObjectId blob;
+    }
+
+    /** Inserts the parts of a file and its manifest as blobs, reading the file once. */
+    public Inserted insert(ObjectInserter inserter, Path file) throws IOException {
+        long length = Files.size(file);
+        long parts = (length + PART_BYTES - 1) / PART_BYTES;
+        Inserted inserted = new Inserted();
+        byte[] manifest = manifest(length, parts);
+        inserted.entries.put("manifest", inserter.insert(Constants.OBJ_BLOB, manifest));
+        inserted.sizes.put("manifest", (long) manifest.length);
+        MessageDigest digest = blobDigest(length);
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            for (int i = 0; i < parts; i++) {
+                long partLength = Math.min(PART_BYTES, length - (long) i * PART_BYTES);
+                inserted.entries.put(partName(i),
+                        inserter.insert(Constants.OBJ_BLOB, partLength, limit(in, partLength)));
+                inserted.sizes.put(partName(i), partLength);
+            }
+            if (in.read() >= 0) {
+                throw new IOException(file.getFileName() + " grew while it was split");
+            }
+        }
+        inserted.blob = ObjectId.fromRaw(digest.digest());
+        return inserted;
+    }
+
+    /**
+     * Writes the file stored in the given entries to {@code out} one part at a
+     * time and returns its id as a single blob.
+     */
+    public ObjectId restore(ObjectReader reader, Map<String, ObjectId> entries, OutputStream out)
+            throws IOException {
+        ObjectId manifestId = entries.get("manifest");
+        if (manifestId == null) {
+            throw new IOException("Split file has no manifest");
+        }
+        String text = new String(reader.open(manifestId, Constants.OBJ_BLOB).getBytes(), StandardCharsets.UTF_8);
+        long length = parseField(text, "length");
+        long parts = parseField(text, "parts");
+        if (length < 0 || parts < 0) {
+            throw new IOException("Split file manifest is invalid");
+        }
+        if (entries.size() != parts + 1) {
+            throw new IOException("Split file has " + (entries.size() - 1) + " parts, expected " + parts);
+        }
+        MessageDigest digest = blobDigest(length);
+        // Not closed: the caller owns out
+        OutputStream digesting = new DigestOutputStream(out, digest);
+        long position = 0;
+        for (int i = 0; i < parts; i++) {
+            ObjectId partId = entries.get(partName(i));
+            if (partId == null) {
+                throw new IOException("Missing " + partName(i));
+            }
+            ObjectLoader part = reader.open(partId, Constants.OBJ_BLOB);
+            if (position + part.getSize() > length) {
+                throw new IOException("Split file parts exceed its length");
+            }
+            part.copyTo(digesting);
+            position += part.getSize();
+        }
+        if (position != length) {
+            throw new IOException("Split file parts do not add up to its length");
+        }
+        digesting.flush();
+        return ObjectId.fromRaw(digest.digest());
+    }
+
+    @Override
+    public Map<String, byte[]> encode(byte[] content) {
+        int parts = (content.length + PART_BYTES - 1) / PART_BYTES;
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("manifest", manifest(content.length, parts));
+        for (int i = 0; i < parts; i++) {
+            int start = i * PART_BYTES;
+            byte[] part = new byte[Math.min(PART_BYTES, content.length - start)];
+            System.arraycopy(content, start, part, 0, part.length);
+            entries.put(partName(i), part);
+        }
+        return entries;
+    }
+
+    @Override
+    public byte[] decode(Map<String, byte[]> entries) throws IOException {
+        byte[] manifest = entries.get("manifest");
+        if (manifest == null) {
+            throw new IOException("Split file has no manifest");
+        }
+        String text = new String(manifest, StandardCharsets.UTF_8);
+        long length = parseField(text, "length");
+        long parts = parseField(text, "parts");
+        if (length < 0 || parts < 0) {
+            throw new IOException("Split file manifest is invalid");
+        }
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Split file of " + length + " bytes is too large to hold in memory");
+        }
+        if (entries.size() != parts + 1) {
+            throw new IOException("Split file has " + (entries.size() - 1) + " parts, expected " + parts);
+        }
+        byte[] content = new byte[(int) length];
+        int position = 0;
+        for (int i = 0; i < parts; i++) {
+            byte[] part = entries.get(partName(i));
+            if (part == null) {
+                throw new IOException("Missing " + partName(i));
+            }
+            if (position + part.length > length) {
+                throw new IOException("Split file parts exceed its length");
+            }
+            System.arraycopy(part, 0, content, position, part.length);
+            position += part.length;
+        }
+        if (position != length) {
+            throw new IOException("Split file parts do not add up to its length");
+        }
+        return content;
+    }
+
+    static String partName(int index) {
+        return String.format("part.%04d", index);
+    }
+
+    private static byte[] manifest(long length, long parts) {
+        return ("length " + length + "\nparts " + parts + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Digest of the whole file as Git hashes a blob, header first
+    private static MessageDigest blobDigest(long length) {
+        MessageDigest digest = Constants.newMessageDigest();
+        digest.update(Constants.encodedTypeString(Constants.OBJ_BLOB));
+        digest.update((byte) ' ');
+        digest.update(Constants.encodeASCII(length));
+        digest.update((byte) 0);
+        return digest;
+    }
+
+    // The next length bytes of in, without closing it
+    private static InputStream limit(InputStream in, long length) {
+        return new LimitedInputStream(in, length) {
+            @Override
+            protected void limitExceeded() throws IOException {
+                throw new IOException("Read past the end of a part");
+            }
+
+            @Override
+            public void close() {
+                // The file stream is closed by the caller
+            }
+        };
+    }
+
+    private static long parseField(String manifest, String name) throws IOException {
+        for (String line : manifest.split("\n")) {
+            if (line.startsWith(name + " ")) {
+                try {
+                    return Long.parseLong(line.substring(name.length() + 1).trim());
+                } catch (NumberFormatException e) {
+                    break;
+                }
+            }
+        }
+        throw new IOException("Split file manifest has no " + name);
+    }
+}
@@ -0,0 +1,30 @@
+package com.tomesh.worldsyncer.core;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Stores a world file in the repository as a set of entries instead of one
+ * opaque blob. Entries live in a directory named after the file plus
+ * {@link #suffix()}, e.g. region/r.0.0.mca.chunks/header.
+ */
+public interface StorageCodec {
+    /** Directory suffix that marks this codec's entries in the repository tree. */
+    String suffix();
+
+    /** Whether this codec can store the given world-relative path. */
+    boolean handles(String path);
+
+    /**
+     * Splits a file into named entries. Returns null if the file cannot be
+     * encoded (e.g. it is corrupt), in which case it is stored as is.
+     */
+    Map<String, byte[]> encode(byte[] content) throws IOException;
+
+    /**
+     * Rebuilds a file from the entries produced by {@link #encode}: the exact
+     * original bytes, or for a codec that canonicalizes, a file the game reads
+     * the same way.
+     */
+    byte[] decode(Map<String, byte[]> entries) throws IOException;
+}
@@ -0,0 +1,91 @@
+package com.tomesh.worldsyncer.core;
+
+import com.tomesh.worldsyncer.GithubBackupMod;
+import com.tomesh.worldsyncer.config.ModConfig;
+
+import java.util.List;
+
+/**
+ * Registry of {@link StorageCodec}s and the mapping between world paths and
+ * repository paths. Decoding always recognises every codec, so a world backed
+ * up with a storage option on can be restored on a machine that has it off.
+ */
+public final class StorageCodecs {
+    private static final RegionChunkCodec REGION_CHUNKS = new RegionChunkCodec();
+    private static final InflatedChunkCodec INFLATED_CHUNKS = new InflatedChunkCodec();
+    private static final SplitFileCodec SPLIT = new SplitFileCodec();
+    private static final NbtCodec NBT = new NbtCodec();
+    private static final List<StorageCodec> ALL = List.of(REGION_CHUNKS, INFLATED_CHUNKS, SPLIT, NBT);
+
+    private StorageCodecs() {
+    }
+
+    public static List<StorageCodec> all() {
+        return ALL;
+    }
+
+    /**
+     * The codec new backups should use for a world file of the given size, or
+     * null to store it as is. Files too large to push are always split.
+     */
+    public static StorageCodec encoderFor(String worldPath, long size) {
+        ModConfig config = GithubBackupMod.getConfig();
+        if (config != null && config.chunkedRegionStorage && REGION_CHUNKS.handles(worldPath)) {
+            return config.uncompressedChunkStorage ? INFLATED_CHUNKS : REGION_CHUNKS;
+        }
+        if (config != null && config.canonicalNbtStorage && NBT.handles(worldPath) && !SPLIT.isOversized(size)) {
+            return NBT;
+        }
+        if (SPLIT.isOversized(size)) {
+            return SPLIT;
+        }
+        return null;
+    }
+
+    /**
+     * The codec for a file another codec could not encode, or null if it can
+     * be stored as is.
+     */
+    public static StorageCodec fallbackFor(long size) {
+        return SPLIT.isOversized(size) ? SPLIT : null;
+    }
+
+    /** Repository directory holding a world file's entries under the given codec. */
+    public static String entryDir(String worldPath, StorageCodec codec) {
+        return worldPath + codec.suffix();
+    }
+
+    /**
+     * Resolves a repository path to the world file it belongs to. Returns a
+     * {@link Location} with a null codec for files stored as is.
+     */
+    public static Location locate(String repoPath) {
+        int searchFrom = 0;
+        while (true) {
+            int slash = repoPath.indexOf('/', searchFrom);
+            if (slash < 0) {
+                return new Location(repoPath, null, null);
+            }
+            String dir = repoPath.substring(0, slash);
+            for (StorageCodec codec : ALL) {
+                if (dir.endsWith(codec.suffix()) && dir.length() > codec.suffix().length()) {
+                    return new Location(dir.substring(0, dir.length() - codec.suffix().length()), codec,
+                            repoPath.substring(slash + 1));
+                }
+            }
+            searchFrom = slash + 1;
+        }
+    }
+
+    public static final class Location {
+        public final String worldPath;
+        public final StorageCodec codec;
+        public final String entryName;
+
+        Location(String worldPath, StorageCodec codec, String entryName) {
+            this.worldPath = worldPath;
+            this.codec = codec;
+            this.entryName = entryName;
+        }
+    }
+}
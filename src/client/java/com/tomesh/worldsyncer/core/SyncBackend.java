@@ -0,0 +1,62 @@
+package com.tomesh.worldsyncer.core;
+
+import com.tomesh.worldsyncer.config.ModConfig;
+
+import org.eclipse.jgit.transport.CredentialsProvider;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Where world repositories are kept. GithubService does all git work itself
+ * (staging, commits, pushing and fetching snapshots); a backend only manages
+ * the targets those snapshots go to and tells git how to reach them.
+ * <p>
+ * Targets are identified as {@code "<owner>/<name>"}, the form stored in
+ * {@code WorldBackupEntry.repoFullName}.
+ */
+public interface SyncBackend {
+    /** The backend the config selects. */
+    static SyncBackend fromConfig(ModConfig config) {
+        if (config.syncBackend == ModConfig.Backend.LOCAL) {
+            return new LocalBackend(config.localBackupDirectory);
+        }
+        return new GithubBackend(config.githubAccessToken);
+    }
+
+    /** Short name for logs and messages, e.g. "GitHub". */
+    String getName();
+
+    /**
+     * Why the backend cannot be used with the current settings, worded for the
+     * player, or null if it is set up.
+     */
+    String getSetupProblem();
+
+    /** Makes sure the backend is reachable. Cheap once it succeeded. */
+    void connect() throws IOException;
+
+    /**
+     * Creates the target for a world unless it exists, and returns its id.
+     */
+    String createTarget(String worldName) throws IOException;
+
+    /** World name to target id for every world target of this backend. */
+    Map<String, String> listTargets() throws IOException;
+
+    /** Deletes a target with its whole history. */
+    void deleteTarget(String target) throws IOException;
+
+    /** Git URL world repositories push to and fetch from. */
+    String remoteUrl(String target);
+
+    /** Credentials for the git transport, or null if none are needed. */
+    CredentialsProvider credentials();
+
+    /**
+     * Maps each key of {@code targets} (a world name) to the SHA of main in its
+     * target, or {@link RemoteHeadProbe#NO_BRANCH}. Targets that could not be
+     * resolved are left out; throws if the lookup failed as a whole.
+     */
+    Map<String, String> probeHeads(Map<String, String> targets) throws IOException;
+}
@@ -0,0 +1,62 @@
+package com.tomesh.worldsyncer.core;
+
+import com.tomesh.worldsyncer.GithubBackupMod;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide counters for sync operations, written to the log so the cost
+ * of a refresh can be compared across versions.
+ */
+public final class SyncMetrics {
+    private static final AtomicLong pulls = new AtomicLong();
+    private static final AtomicLong pullRoundTrips = new AtomicLong();
+    private static final AtomicLong maintenanceReclaimed = new AtomicLong();
+    private static final AtomicLong bytesSent = new AtomicLong();
+    private static final AtomicLong bytesReceived = new AtomicLong();
+
+    private SyncMetrics() {
+    }
+
+    /**
+     * Records one finished pull and the number of network round trips it made
+     * (fetches, clones and GitHub API calls).
+     */
+    public static void recordPull(String worldName, int roundTrips) {
+        long count = pulls.incrementAndGet();
+        long total = pullRoundTrips.addAndGet(roundTrips);
+        GithubBackupMod.LOGGER.info("Pull for {} took {} network round trip(s); {} over {} pull(s) this session",
+                worldName, roundTrips, total, count);
+    }
+
+    /** Records bytes freed by one repository repack. */
+    public static void recordMaintenance(long reclaimedBytes) {
+        maintenanceReclaimed.addAndGet(Math.max(0, reclaimedBytes));
+    }
+
+    /** Records the traffic of one finished {@link TransferMetrics} operation. */
+    public static void recordTransfer(long sent, long received) {
+        bytesSent.addAndGet(sent);
+        bytesReceived.addAndGet(received);
+    }
+
+    public static long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public static long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public static long getMaintenanceReclaimed() {
+        return maintenanceReclaimed.get();
+    }
+
+    public static long getPulls() {
+        return pulls.get();
+    }
+
+    public static long getPullRoundTrips() {
+        return pullRoundTrips.get();
+    }
+}
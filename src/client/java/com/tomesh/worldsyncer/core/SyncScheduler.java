@@ -0,0 +1,143 @@
+package com.tomesh.worldsyncer.core;
+
+import com.tomesh.worldsyncer.GithubBackupMod;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs all sync work (clone, pull, backup, repo API calls) on a dedicated,
+ * bounded thread pool instead of the common ForkJoinPool.
+ * Jobs sharing a world key run strictly one after another, so two operations
+ * never touch the same .git at once; different worlds run in parallel up to
+ * the configured limit.
+ */
+public class SyncScheduler {
+    /** Key used for jobs that are not tied to a single world (e.g. repo listing). */
+    public static final String GLOBAL_KEY = "<global>";
+
+    private static SyncScheduler instance;
+
+    private final ThreadPoolExecutor executor;
+    // Last queued job per world key; new jobs for the same key chain onto it
+    private final Map<String, CompletableFuture<?>> tails = new HashMap<>();
+    // Queued + running jobs per world key
+    private final Map<String, Integer> depths = new HashMap<>();
+    private int totalDepth = 0;
+
+    private SyncScheduler(int parallelism) {
+        int threads = Math.max(1, parallelism);
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "WorldSaver-Sync-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), factory);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized SyncScheduler get() {
+        if (instance == null) {
+            int parallelism = 3;
+            com.tomesh.worldsyncer.config.ModConfig config = GithubBackupMod.getConfig();
+            if (config != null) {
+                parallelism = config.maxParallelSyncs;
+            }
+            instance = new SyncScheduler(parallelism);
+        }
+        return instance;
+    }
+
+    /**
+     * Changes how many different worlds may sync at the same time. Jobs already
+     * running are not interrupted.
+     */
+    public void setParallelism(int parallelism) {
+        int threads = Math.max(1, parallelism);
+        if (threads == executor.getMaximumPoolSize()) {
+            return;
+        }
+        // Order matters: core size may never exceed max size
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+        GithubBackupMod.LOGGER.info("Sync scheduler parallelism set to {}", threads);
+    }
+
+    public CompletableFuture<Void> submit(String worldKey, Runnable job) {
+        return submit(worldKey, () -> {
+            job.run();
+            return null;
+        });
+    }
+
+    /**
+     * Queues a job behind every earlier job for the same world key. The returned
+     * future completes with the job's result once it has run.
+     */
+    public synchronized <T> CompletableFuture<T> submit(String worldKey, Supplier<T> job) {
+        String key = worldKey == null ? GLOBAL_KEY : worldKey;
+        CompletableFuture<?> previous = tails.getOrDefault(key, CompletableFuture.completedFuture(null));
+        depths.merge(key, 1, Integer::sum);
+        totalDepth++;
+        // Failures of the previous job must not cancel this one
+        CompletableFuture<T> next = previous.handle((result, ex) -> null)
+                .thenApplyAsync(ignored -> job.get(), executor);
+        tails.put(key, next);
+        next.whenComplete((result, ex) -> onJobFinished(key, next));
+        return next;
+    }
+
+    private synchronized void onJobFinished(String key, CompletableFuture<?> job) {
+        totalDepth--;
+        Integer remaining = depths.merge(key, -1, Integer::sum);
+        if (remaining == null || remaining <= 0) {
+            depths.remove(key);
+        }
+        if (tails.get(key) == job) {
+            tails.remove(key);
+        }
+    }
+
+    /**
+     * Completes once every job queued so far for the given world has run,
+     * whether it succeeded or not.
+     */
+    public synchronized CompletableFuture<Void> whenIdle(String worldKey) {
+        CompletableFuture<?> tail = tails.get(worldKey == null ? GLOBAL_KEY : worldKey);
+        return tail == null ? CompletableFuture.completedFuture(null) : tail.handle((result, ex) -> null);
+    }
+
+    /** Number of jobs queued or running for the given world. */
+    public synchronized int getQueueDepth(String worldKey) {
+        return depths.getOrDefault(worldKey == null ? GLOBAL_KEY : worldKey, 0);
+    }
+
+    /** Number of jobs queued or running across all worlds. */
+    public synchronized int getQueueDepth() {
+        return totalDepth;
+    }
+
+    /** Snapshot of queue depth per world key, for display. */
+    public synchronized Map<String, Integer> getQueueDepths() {
+        return new HashMap<>(depths);
+    }
+
+    public boolean isIdle() {
+        return getQueueDepth() == 0;
+    }
+}
@@ -0,0 +1,411 @@
+package com.tomesh.worldsyncer.core;
+
+import com.tomesh.worldsyncer.GithubBackupMod;
+
+import org.eclipse.jgit.api.TransportConfigCallback;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.transport.HttpTransport;
+import org.eclipse.jgit.transport.TransportHttp;
+import org.eclipse.jgit.transport.http.HttpConnection;
+import org.eclipse.jgit.transport.http.HttpConnectionFactory;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.TrustManager;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.URL;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings and traffic of one backup, pull or clone. The operation marks its
+ * phases (scan, stage, commit, upload, ...) and passes this object to JGit as
+ * progress monitor, which adds JGit's own tasks (counting, compressing,
+ * writing objects). Bytes are counted on the HTTP connections themselves.
+ * <p>
+ * Running operations are listed by {@link #active()} for the progress toast;
+ * {@link #finish} writes everything as a single key=value log line.
+ */
+public class TransferMetrics implements ProgressMonitor {
+    private static final Set<TransferMetrics> ACTIVE = ConcurrentHashMap.newKeySet();
+
+    private final String operation;
+    private final String worldName;
+    private final long startNanos = System.nanoTime();
+    // Phases and JGit tasks in the order they ran, in milliseconds
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private final Map<String, Long> tasks = new LinkedHashMap<>();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private String phase;
+    private long phaseStartNanos;
+    private volatile String task;
+    private volatile int taskTotal;
+    private volatile int taskDone;
+    private long taskStartNanos;
+    private volatile long firstByteNanos;
+    private int objects;
+
+    private TransferMetrics(String operation, String worldName) {
+        this.operation = operation;
+        this.worldName = worldName;
+    }
+
+    /** Starts measuring an operation and lists it as active until {@link #finish}. */
+    public static TransferMetrics start(String operation, String worldName) {
+        TransferMetrics metrics = new TransferMetrics(operation, worldName);
+        ACTIVE.add(metrics);
+        return metrics;
+    }
+
+    /** Operations currently running, oldest first. */
+    public static List<TransferMetrics> active() {
+        List<TransferMetrics> active = new ArrayList<>(ACTIVE);
+        active.sort((a, b) -> Long.compare(a.startNanos, b.startNanos));
+        return active;
+    }
+
+    /** Ends the current phase, if any, and starts the named one. */
+    public synchronized void phase(String name) {
+        long now = System.nanoTime();
+        endPhase(now);
+        phase = name;
+        phaseStartNanos = now;
+    }
+
+    /** Ends the operation and logs its metrics. Safe to call more than once. */
+    public synchronized void finish(boolean succeeded) {
+        if (!ACTIVE.remove(this)) {
+            return;
+        }
+        long now = System.nanoTime();
+        endPhase(now);
+        phase = null;
+        SyncMetrics.recordTransfer(bytesSent.get(), bytesReceived.get());
+        StringBuilder line = new StringBuilder("transfer op=").append(operation)
+                .append(" world=\"").append(worldName.replace("\"", "'")).append('"')
+                .append(" result=").append(succeeded ? "ok" : "failed")
+                .append(" total_ms=").append(TimeUnit.NANOSECONDS.toMillis(now - startNanos));
+        phases.forEach((name, millis) -> line.append(" phase.").append(name).append("_ms=").append(millis));
+        tasks.forEach((name, millis) -> line.append(" task.").append(name).append("_ms=").append(millis));
+        line.append(" bytes_sent=").append(bytesSent.get())
+                .append(" bytes_received=").append(bytesReceived.get())
+                .append(" objects=").append(objects);
+        GithubBackupMod.LOGGER.info(line.toString());
+    }
+
+    /**
+     * Makes the transport of a JGit command count the bytes it sends and
+     * receives into this operation. Only HTTP(S) transports are counted.
+     */
+    public TransportConfigCallback countingTransport() {
+        return transport -> {
+            if (transport instanceof TransportHttp) {
+                TransportHttp http = (TransportHttp) transport;
+                HttpConnectionFactory delegate = http.getHttpConnectionFactory() != null
+                        ? http.getHttpConnectionFactory()
+                        : HttpTransport.getConnectionFactory();
+                http.setHttpConnectionFactory(new CountingConnectionFactory(delegate));
+            }
+        };
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getWorldName() {
+        return worldName;
+    }
+
+    /** What is happening right now: JGit's task if one runs, else the phase. */
+    public synchronized String getStatus() {
+        String current = task;
+        return current != null ? current : phase != null ? phase : operation;
+    }
+
+    /** Progress of the current JGit task from 0 to 1, or -1 if unknown. */
+    public float getFraction() {
+        int total = taskTotal;
+        if (task == null || total <= 0) {
+            return -1;
+        }
+        return Math.min(1f, (float) taskDone / total);
+    }
+
+    /** Seconds until the current JGit task completes at its rate so far, or -1. */
+    public synchronized long getEtaSeconds() {
+        float fraction = getFraction();
+        if (fraction <= 0.01f || fraction >= 1f) {
+            return -1;
+        }
+        double elapsed = (System.nanoTime() - taskStartNanos) / 1e9;
+        return Math.round(elapsed / fraction * (1 - fraction));
+    }
+
+    /** Average bytes per second sent and received since the first byte. */
+    public long getBytesPerSecond() {
+        long first = firstByteNanos;
+        if (first == 0) {
+            return 0;
+        }
+        double seconds = Math.max(0.001, (System.nanoTime() - first) / 1e9);
+        return (long) ((bytesSent.get() + bytesReceived.get()) / seconds);
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public void start(int totalTasks) {
+    }
+
+    @Override
+    public synchronized void beginTask(String title, int totalWork) {
+        endTask();
+        task = title;
+        taskTotal = totalWork;
+        taskDone = 0;
+        taskStartNanos = System.nanoTime();
+        if (totalWork > objects && title.toLowerCase(Locale.ROOT).contains("objects")) {
+            objects = totalWork;
+        }
+    }
+
+    @Override
+    public void update(int completed) {
+        taskDone += completed;
+    }
+
+    @Override
+    public synchronized void endTask() {
+        if (task == null) {
+            return;
+        }
+        String key = task.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "_").replaceAll("^_|_$", "");
+        tasks.merge(key, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - taskStartNanos), Long::sum);
+        task = null;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public void showDuration(boolean enabled) {
+    }
+
+    private void endPhase(long now) {
+        if (phase != null) {
+            phases.merge(phase, TimeUnit.NANOSECONDS.toMillis(now - phaseStartNanos), Long::sum);
+        }
+    }
+
+    private void count(AtomicLong counter, long bytes) {
+        if (firstByteNanos == 0) {
+            firstByteNanos = System.nanoTime();
+        }
+        counter.addAndGet(bytes);
+    }
+
+    private class CountingConnectionFactory implements HttpConnectionFactory {
+        private final HttpConnectionFactory delegate;
+
+        CountingConnectionFactory(HttpConnectionFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public HttpConnection create(URL url) throws IOException {
+            return new CountingConnection(delegate.create(url));
+        }
+
+        @Override
+        public HttpConnection create(URL url, Proxy proxy) throws IOException {
+            return new CountingConnection(delegate.create(url, proxy));
+        }
+    }
+
+    // Delegates everything and wraps the two body streams
+    private class CountingConnection implements HttpConnection {
+        private final HttpConnection delegate;
+
+        CountingConnection(HttpConnection delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(delegate.getInputStream()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        count(bytesReceived, 1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int n = super.read(buffer, offset, length);
+                    if (n > 0) {
+                        count(bytesReceived, n);
+                    }
+                    return n;
+                }
+            };
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return new FilterOutputStream(delegate.getOutputStream()) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    count(bytesSent, 1);
+                }
+
+                @Override
+                public void write(byte[] buffer, int offset, int length) throws IOException {
+                    out.write(buffer, offset, length);
+                    count(bytesSent, length);
+                }
+            };
+        }
+
+        @Override
+        public int getResponseCode() throws IOException {
+            return delegate.getResponseCode();
+        }
+
+        @Override
+        public URL getURL() {
+            return delegate.getURL();
+        }
+
+        @Override
+        public String getResponseMessage() throws IOException {
+            return delegate.getResponseMessage();
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+            return delegate.getHeaderFields();
+        }
+
+        @Override
+        public void setRequestProperty(String key, String value) {
+            delegate.setRequestProperty(key, value);
+        }
+
+        @Override
+        public void setRequestMethod(String method) throws ProtocolException {
+            delegate.setRequestMethod(method);
+        }
+
+        @Override
+        public void setUseCaches(boolean usecaches) {
+            delegate.setUseCaches(usecaches);
+        }
+
+        @Override
+        public void setConnectTimeout(int timeout) {
+            delegate.setConnectTimeout(timeout);
+        }
+
+        @Override
+        public void setReadTimeout(int timeout) {
+            delegate.setReadTimeout(timeout);
+        }
+
+        @Override
+        public String getContentType() {
+            return delegate.getContentType();
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            return delegate.getHeaderField(name);
+        }
+
+        @Override
+        public List<String> getHeaderFields(String name) {
+            return delegate.getHeaderFields(name);
+        }
+
+        @Override
+        public int getContentLength() {
+            return delegate.getContentLength();
+        }
+
+        @Override
+        public void setInstanceFollowRedirects(boolean followRedirects) {
+            delegate.setInstanceFollowRedirects(followRedirects);
+        }
+
+        @Override
+        public void setDoOutput(boolean dooutput) {
+            delegate.setDoOutput(dooutput);
+        }
+
+        @Override
+        public void setFixedLengthStreamingMode(int contentLength) {
+            delegate.setFixedLengthStreamingMode(contentLength);
+        }
+
+        @Override
+        public void setChunkedStreamingMode(int chunklen) {
+            delegate.setChunkedStreamingMode(chunklen);
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return delegate.getRequestMethod();
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return delegate.usingProxy();
+        }
+
+        @Override
+        public void connect() throws IOException {
+            delegate.connect();
+        }
+
+        @Override
+        public void configure(KeyManager[] km, TrustManager[] tm, SecureRandom random)
+                throws NoSuchAlgorithmException, KeyManagementException {
+            delegate.configure(km, tm, random);
+        }
+
+        @Override
+        public void setHostnameVerifier(HostnameVerifier hostnameverifier)
+                throws NoSuchAlgorithmException, KeyManagementException {
+            delegate.setHostnameVerifier(hostnameverifier);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.tomesh.worldsyncer.core;
+
+import com.tomesh.worldsyncer.GithubBackupMod;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Overwrites a world folder with the state of a commit, the equivalent of
+ * reset --hard plus clean that also understands {@link StorageCodec} entries.
+ * Only files that differ between the index and the target, or that
+ * the stat cache reports as locally changed, are written or deleted. Files
+ * outside the world's {@link SparseProfile} are left alone.
+ */
+public class WorldRestorer {
+    private final Repository repository;
+    private final File worldDir;
+
+    public WorldRestorer(Repository repository) {
+        this.repository = repository;
+        this.worldDir = repository.getWorkTree();
+    }
+
+    /**
+     * Restores the world to {@code target} and points main (and HEAD) at it.
+     *
+     * @return the number of world files written or deleted
+     */
+    public int restore(ObjectId target) throws IOException {
+        WorldStatCache statCache = WorldStatCache.load(worldDir);
+        WorldStatCache.ChangeSet local = statCache.scan(worldDir);
+        int touched;
+        try (RevWalk revWalk = new RevWalk(repository); ObjectReader reader = repository.newObjectReader()) {
+            RevTree targetTree = revWalk.parseCommit(target).getTree();
+            Set<String> pending = new HashSet<>(local.modified);
+            pending.addAll(local.removed);
+            pending.addAll(changedWorldPaths(reader, repository.readDirCache(), targetTree));
+            SparseProfile sparse = statCache.getSparseProfile();
+            pending.removeIf(path -> !sparse.includes(path));
+
+            Map<String, Stored> wanted = targetEntries(reader, targetTree, pending);
+            touched = 0;
+            for (String path : pending) {
+                Stored entries = wanted.get(path);
+                if (entries == null) {
+                    if (delete(path)) {
+                        touched++;
+                    }
+                    statCache.forget(path);
+                } else {
+                    statCache.recordFile(worldDir, path, write(reader, path, entries));
+                    touched++;
+                }
+            }
+            resetIndex(reader, targetTree);
+        }
+        statCache.save();
+        updateMain(target);
+        return touched;
+    }
+
+    /**
+     * Deletes files outside the world's sparse profile that are exactly as they
+     * were last backed up or restored, so narrowing the profile frees their
+     * space. Files changed since then are kept.
+     *
+     * @return the number of files deleted
+     */
+    public int prune() throws IOException {
+        WorldStatCache statCache = WorldStatCache.load(worldDir);
+        SparseProfile sparse = statCache.getSparseProfile();
+        if (sparse.isFull()) {
+            return 0;
+        }
+        int pruned = 0;
+        for (String path : new ArrayList<>(statCache.getPaths())) {
+            if (!sparse.includes(path) && statCache.isUnchanged(worldDir, path)) {
+                delete(path);
+                statCache.forget(path);
+                pruned++;
+            }
+        }
+        if (pruned > 0) {
+            statCache.save();
+        }
+        return pruned;
+    }
+
+    /**
+     * Points the index, main and HEAD at {@code target} without touching the
+     * world folder, for a restore that writes the files itself later.
+     */
+    public void adopt(ObjectId target) throws IOException {
+        try (RevWalk revWalk = new RevWalk(repository); ObjectReader reader = repository.newObjectReader()) {
+            resetIndex(reader, revWalk.parseCommit(target).getTree());
+        }
+        updateMain(target);
+    }
+
+    /**
+     * Every world file of {@code target} inside the sparse profile and how it
+     * is stored; reads trees only.
+     */
+    Map<String, Stored> files(ObjectId target) throws IOException {
+        try (RevWalk revWalk = new RevWalk(repository); ObjectReader reader = repository.newObjectReader()) {
+            Map<String, Stored> files = targetEntries(reader, revWalk.parseCommit(target).getTree(), null);
+            SparseProfile sparse = SparseProfile.load(worldDir);
+            files.keySet().removeIf(path -> !sparse.includes(path));
+            return files;
+        }
+    }
+
+    // World paths whose repository entries differ between the index (what was
+    // last backed up or restored here; empty after a no-checkout clone) and the
+    // target tree
+    private static Set<String> changedWorldPaths(ObjectReader reader, DirCache index, RevTree target)
+            throws IOException {
+        Set<String> paths = new HashSet<>();
+        try (TreeWalk walk = new TreeWalk(reader)) {
+            walk.setRecursive(true);
+            walk.addTree(new DirCacheIterator(index));
+            walk.addTree(target);
+            walk.setFilter(TreeFilter.ANY_DIFF);
+            while (walk.next()) {
+                paths.add(StorageCodecs.locate(walk.getPathString()).worldPath);
+            }
+        }
+        return paths;
+    }
+
+    // How one world file is stored in the target tree: its blob, or its codec
+    // and entry blobs
+    static final class Stored {
+        ObjectId blob;
+        StorageCodec codec;
+        final Map<String, ObjectId> entries = new TreeMap<>();
+        boolean ambiguous;
+
+        List<ObjectId> blobs() {
+            return blob != null ? List.of(blob) : List.copyOf(entries.values());
+        }
+    }
+
+    // A null worldPaths takes every file
+    private static Map<String, Stored> targetEntries(ObjectReader reader, RevTree target, Set<String> worldPaths)
+            throws IOException {
+        Map<String, Stored> result = new HashMap<>();
+        try (TreeWalk walk = new TreeWalk(reader)) {
+            walk.setRecursive(true);
+            walk.addTree(target);
+            while (walk.next()) {
+                if (!FileMode.REGULAR_FILE.equals(walk.getRawMode(0))
+                        && !FileMode.EXECUTABLE_FILE.equals(walk.getRawMode(0))) {
+                    continue;
+                }
+                StorageCodecs.Location location = StorageCodecs.locate(walk.getPathString());
+                if (worldPaths != null && !worldPaths.contains(location.worldPath)) {
+                    continue;
+                }
+                Stored stored = result.computeIfAbsent(location.worldPath, k -> new Stored());
+                if (location.codec == null) {
+                    stored.blob = walk.getObjectId(0);
+                } else {
+                    stored.ambiguous |= stored.codec != null && stored.codec != location.codec;
+                    stored.codec = location.codec;
+                    stored.entries.put(location.entryName, walk.getObjectId(0));
+                }
+            }
+        }
+        return result;
+    }
+
+    // Writes one world file through a temp file so a failed restore never
+    // leaves it half written; returns the hash of its content
+    ObjectId write(ObjectReader reader, String path, Stored stored) throws IOException {
+        if (stored.ambiguous || (stored.blob != null && stored.codec != null)) {
+            throw new IOException("Backup holds " + path + " in more than one form");
+        }
+        Path file = worldDir.toPath().resolve(path);
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".worldsyncer-tmp");
+        ObjectId hash;
+        if (stored.blob != null) {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                reader.open(stored.blob, Constants.OBJ_BLOB).copyTo(out);
+            }
+            hash = stored.blob;
+        } else if (stored.codec instanceof SplitFileCodec) {
+            // Part by part; the file may not fit in memory
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                hash = ((SplitFileCodec) stored.codec).restore(reader, stored.entries, out);
+            }
+        } else {
+            Map<String, byte[]> data = new HashMap<>();
+            for (Map.Entry<String, ObjectId> entry : stored.entries.entrySet()) {
+                data.put(entry.getKey(), reader.open(entry.getValue(), Constants.OBJ_BLOB).getBytes());
+            }
+            byte[] content = stored.codec.decode(data);
+            Files.write(tmp, content);
+            try (ObjectInserter.Formatter formatter = new ObjectInserter.Formatter()) {
+                hash = formatter.idFor(Constants.OBJ_BLOB, content);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return hash;
+    }
+
+    private boolean delete(String path) throws IOException {
+        Path file = worldDir.toPath().resolve(path);
+        if (!Files.deleteIfExists(file)) {
+            return false;
+        }
+        // Drop directories the deletion left empty, as clean would
+        Path dir = file.getParent();
+        Path root = worldDir.toPath();
+        while (dir != null && !dir.equals(root)) {
+            try (var children = Files.list(dir)) {
+                if (children.findAny().isPresent()) {
+                    break;
+                }
+            }
+            Files.delete(dir);
+            dir = dir.getParent();
+        }
+        return true;
+    }
+
+    private void resetIndex(ObjectReader reader, RevTree target) throws IOException {
+        DirCache index = repository.lockDirCache();
+        try {
+            DirCacheBuilder builder = index.builder();
+            builder.addTree(new byte[0], 0, reader, target);
+            builder.finish();
+            index.write();
+            if (!index.commit()) {
+                throw new IOException("Could not write index");
+            }
+        } finally {
+            index.unlock();
+        }
+    }
+
+    private void updateMain(ObjectId target) throws IOException {
+        RefUpdate main = repository.updateRef("refs/heads/main");
+        main.setNewObjectId(target);
+        main.setForceUpdate(true);
+        RefUpdate.Result result = main.update();
+        if (result == RefUpdate.Result.LOCK_FAILURE || result == RefUpdate.Result.IO_FAILURE
+                || result == RefUpdate.Result.REJECTED) {
+            throw new IOException("Could not update main: " + result);
+        }
+        // A no-checkout clone leaves HEAD on the default branch of git init
+        if (!"refs/heads/main".equals(repository.getFullBranch())) {
+            repository.updateRef(Constants.HEAD).link("refs/heads/main");
+        }
+        GithubBackupMod.LOGGER.debug("Restored {} to {}", worldDir.getName(), target.name());
+    }
+}
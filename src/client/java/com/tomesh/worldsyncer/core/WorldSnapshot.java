@@ -0,0 +1,413 @@
+package com.tomesh.worldsyncer.core;
+
+import com.tomesh.worldsyncer.GithubBackupMod;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point-in-time copy of a world folder (without its .git) in a staging
+ * area, so the backup can commit and push from the copy while the real world
+ * is already free to be reopened.
+ * <p>
+ * The copy is made as cheaply as the filesystem allows: a reflink clone of the
+ * whole tree where supported (btrfs, XFS, APFS), otherwise hard links for files
+ * the game replaces rather than rewrites, and plain copies for region files
+ * and small files that are written in place.
+ * <p>
+ * Copying every changed region file can take seconds on filesystems without
+ * reflinks (ext4, NTFS). A snapshot taken with {@link #createInBackground}
+ * copies them on a thread of its own instead; until one is copied, the game
+ * waits before opening it again (see {@link #awaitFile}).
+ */
+public class WorldSnapshot {
+    // Small files (stats, advancements, data/*.dat) may also be rewritten in
+    // place, and copying them costs next to nothing
+    private static final long LINK_THRESHOLD_BYTES = 256 * 1024;
+    private static Boolean reflinkSupported = null;
+    private static final Map<Path, WorldSnapshot> COPYING = new ConcurrentHashMap<>();
+
+    private final File worldDir;
+    private final File stagingDir;
+    private long durationMillis;
+    private int linkedFiles;
+    private int copiedFiles;
+    private boolean reflinked;
+    private WorldStatCache.ChangeSet changes;
+    // Region files left to the background copy: world-relative path -> source
+    private final Map<String, Path> deferred = new LinkedHashMap<>();
+    private boolean deferRegions;
+    private boolean cancelled;
+    // Held while a deferred file is copied, so discard() never races a copy
+    private final Object copyLock = new Object();
+    private IOException copyFailure;
+
+    private WorldSnapshot(File worldDir, File stagingDir) {
+        this.worldDir = worldDir;
+        this.stagingDir = stagingDir;
+    }
+
+    /**
+     * Snapshots {@code worldDir} into a fresh directory under
+     * {@code stagingRoot}. Must be called while the world is not being written,
+     * e.g. after the integrated server has saved and closed it.
+     */
+    public static WorldSnapshot create(File worldDir, File stagingRoot) throws IOException {
+        return create(worldDir, stagingRoot, null);
+    }
+
+    /**
+     * Like {@link #create(File, File)}, but only copies the files a stat-cache
+     * scan reported as modified; unchanged files are already in the repository
+     * and need no snapshot. The change set travels with the snapshot so the
+     * backup stages exactly those paths.
+     */
+    public static WorldSnapshot create(File worldDir, File stagingRoot, WorldStatCache.ChangeSet changes)
+            throws IOException {
+        return create(worldDir, stagingRoot, changes, false);
+    }
+
+    /**
+     * Like {@link #create(File, File, WorldStatCache.ChangeSet)}, for a world
+     * that was just closed: region files that need a full copy are copied on a
+     * background thread, so the caller only waits for links and small files.
+     * {@link #awaitCopied} tells when the copy is complete.
+     */
+    public static WorldSnapshot createInBackground(File worldDir, File stagingRoot,
+            WorldStatCache.ChangeSet changes) throws IOException {
+        return create(worldDir, stagingRoot, changes, true);
+    }
+
+    private static WorldSnapshot create(File worldDir, File stagingRoot, WorldStatCache.ChangeSet changes,
+            boolean deferRegions) throws IOException {
+        long start = System.nanoTime();
+        File stagingDir = new File(stagingRoot, worldDir.getName() + "-" + System.currentTimeMillis());
+        Files.createDirectories(stagingDir.toPath());
+        WorldSnapshot snapshot = new WorldSnapshot(worldDir, stagingDir);
+        snapshot.changes = changes;
+        snapshot.deferRegions = deferRegions;
+        try {
+            if (changes != null && !changes.isInitial()) {
+                snapshot.linkOrCopyPaths(changes.modified);
+            } else if (!snapshot.tryReflinkTree()) {
+                snapshot.linkOrCopyTree();
+            }
+        } catch (IOException e) {
+            snapshot.discard();
+            throw e;
+        }
+        snapshot.durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        GithubBackupMod.LOGGER.info(
+                "Snapshot of world '{}' took {} ms ({}; {} linked, {} copied, {} region file(s) copied in the "
+                        + "background)", worldDir.getName(), snapshot.durationMillis,
+                snapshot.reflinked ? "reflink" : "link/copy", snapshot.linkedFiles, snapshot.copiedFiles,
+                snapshot.deferred.size());
+        if (!snapshot.deferred.isEmpty()) {
+            COPYING.put(key(worldDir.toPath()), snapshot);
+            Thread thread = new Thread(snapshot::copyDeferred, "WorldSyncer-Snapshot-" + worldDir.getName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Blocks until the background copy of a snapshot from
+     * {@link #createInBackground} is done; throws if it failed.
+     */
+    public synchronized void awaitCopied() throws IOException {
+        boolean interrupted = false;
+        while (!deferred.isEmpty() && copyFailure == null && !cancelled) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (copyFailure != null) {
+            throw copyFailure;
+        }
+    }
+
+    /**
+     * Called before the game opens a region file. If a snapshot still has to
+     * copy it, this blocks until it has, so the game cannot change it first.
+     */
+    public static void awaitFile(Path file) {
+        if (COPYING.isEmpty()) {
+            return;
+        }
+        Path absolute = key(file);
+        for (Map.Entry<Path, WorldSnapshot> entry : COPYING.entrySet()) {
+            if (absolute.startsWith(entry.getKey())) {
+                entry.getValue().await(entry.getKey().relativize(absolute).toString()
+                        .replace(File.separatorChar, '/'));
+                return;
+            }
+        }
+    }
+
+    private synchronized void await(String path) {
+        boolean interrupted = false;
+        while (deferred.containsKey(path) && copyFailure == null && !cancelled) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void copyDeferred() {
+        long start = System.nanoTime();
+        try {
+            while (true) {
+                Map.Entry<String, Path> next;
+                synchronized (copyLock) {
+                    synchronized (this) {
+                        if (deferred.isEmpty() || cancelled) {
+                            break;
+                        }
+                        next = deferred.entrySet().iterator().next();
+                    }
+                    Path dest = stagingDir.toPath().resolve(next.getKey());
+                    try {
+                        Files.copy(next.getValue(), dest, StandardCopyOption.COPY_ATTRIBUTES,
+                                StandardCopyOption.REPLACE_EXISTING);
+                    } catch (NoSuchFileException e) {
+                        // Deleted since the scan; the next backup will notice
+                    }
+                }
+                synchronized (this) {
+                    deferred.remove(next.getKey());
+                    copiedFiles++;
+                    notifyAll();
+                }
+            }
+            GithubBackupMod.LOGGER.info("Copied the region files of the snapshot of '{}' in {} ms",
+                    worldDir.getName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            GithubBackupMod.LOGGER.warn("Could not copy region files of '{}' for its backup: {}",
+                    worldDir.getName(), e.getMessage());
+            synchronized (this) {
+                copyFailure = e;
+            }
+        } finally {
+            COPYING.remove(key(worldDir.toPath()), this);
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    private static Path key(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    public File getWorldDir() {
+        return worldDir;
+    }
+
+    public File getStagingDir() {
+        return stagingDir;
+    }
+
+    /** Changes the snapshot was limited to, or null for a full copy. */
+    public WorldStatCache.ChangeSet getChanges() {
+        return changes;
+    }
+
+    /** How long the world was held while the snapshot was taken. */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /** Deletes the staging copy. Safe to call more than once. */
+    public void discard() {
+        synchronized (this) {
+            cancelled = true;
+            notifyAll();
+        }
+        COPYING.remove(key(worldDir.toPath()), this);
+        synchronized (copyLock) {
+            deleteStaging();
+        }
+    }
+
+    private void deleteStaging() {
+        if (!stagingDir.exists()) {
+            return;
+        }
+        try {
+            Files.walkFileTree(stagingDir.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    Files.deleteIfExists(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            GithubBackupMod.LOGGER.warn("Could not delete snapshot {}: {}", stagingDir, e.getMessage());
+        }
+    }
+
+    // Reflink clones share blocks until either side is written, which is exactly
+    // copy-on-write. Java has no API for it, so ask the platform's cp once and
+    // remember whether it worked.
+    private boolean tryReflinkTree() {
+        if (Boolean.FALSE.equals(reflinkSupported)) {
+            return false;
+        }
+        String os = System.getProperty("os.name", "").toLowerCase();
+        List<String> command = new ArrayList<>();
+        if (os.contains("linux")) {
+            command.add("cp");
+            command.add("-a");
+            command.add("--reflink=always");
+        } else if (os.contains("mac")) {
+            command.add("cp");
+            command.add("-c");
+            command.add("-R");
+            command.add("-p");
+        } else {
+            reflinkSupported = false;
+            return false;
+        }
+        File[] entries = worldDir.listFiles();
+        if (entries == null) {
+            return false;
+        }
+        int optionCount = command.size();
+        for (File entry : entries) {
+            if (!entry.getName().equals(".git")) {
+                command.add(entry.getAbsolutePath());
+            }
+        }
+        if (command.size() == optionCount) {
+            // Nothing but .git, the empty staging directory is the snapshot
+            return true;
+        }
+        command.add(stagingDir.getAbsolutePath() + File.separator);
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            if (process.waitFor(30, TimeUnit.SECONDS) && process.exitValue() == 0) {
+                reflinkSupported = true;
+                reflinked = true;
+                return true;
+            }
+            process.destroyForcibly();
+        } catch (IOException e) {
+            GithubBackupMod.LOGGER.debug("Reflink copy unavailable: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (reflinkSupported == null) {
+            GithubBackupMod.LOGGER.info("Filesystem does not support reflinks, using hard links for snapshots; "
+                    + "region files are copied in full.");
+        }
+        reflinkSupported = false;
+        // Remove whatever a partial cp left behind before falling back
+        deleteStaging();
+        try {
+            Files.createDirectories(stagingDir.toPath());
+        } catch (IOException ignored) {
+        }
+        return false;
+    }
+
+    private void linkOrCopyTree() throws IOException {
+        Path source = worldDir.toPath();
+        Path target = stagingDir.toPath();
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.getFileName() != null && dir.getFileName().toString().equals(".git")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectories(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                snapshotFile(file, target.resolve(source.relativize(file)), attrs);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void linkOrCopyPaths(Collection<String> paths) throws IOException {
+        Path source = worldDir.toPath();
+        Path target = stagingDir.toPath();
+        for (String path : paths) {
+            Path file = source.resolve(path);
+            Path dest = target.resolve(path);
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                // Deleted since the scan; the next backup will notice
+                continue;
+            }
+            Files.createDirectories(dest.getParent());
+            snapshotFile(file, dest, attrs);
+        }
+    }
+
+    private void snapshotFile(Path file, Path dest, BasicFileAttributes attrs) throws IOException {
+        if (deferRegions && isRegionFile(file)) {
+            synchronized (this) {
+                deferred.put(worldDir.toPath().relativize(file).toString().replace(File.separatorChar, '/'), file);
+            }
+            return;
+        }
+        if (!mustCopy(file, attrs)) {
+            try {
+                Files.createLink(dest, file);
+                linkedFiles++;
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                // Different filesystem or no hard link support, copy instead
+            }
+        }
+        Files.copy(file, dest, StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
+        copiedFiles++;
+    }
+
+    // Region files (.mca) are patched in place by the game, so a hard link would
+    // keep changing under the backup once the world is reopened
+    private static boolean mustCopy(Path file, BasicFileAttributes attrs) {
+        return isRegionFile(file) || attrs.size() < LINK_THRESHOLD_BYTES;
+    }
+
+    private static boolean isRegionFile(Path file) {
+        return file.getFileName().toString().endsWith(".mca");
+    }
+}
@@ -0,0 +1,171 @@
+package com.tomesh.worldsyncer.core;
+
+import org.eclipse.jgit.api.AddCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.RmCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stages a {@link WorldStatCache.ChangeSet} into the index. Plain files go
+ * through JGit's AddCommand; files with a {@link StorageCodec} are encoded and
+ * written into the index directly, since their repository form does not exist
+ * in the work tree.
+ */
+public class WorldStager {
+    private WorldStager() {
+    }
+
+    /**
+     * @param extraPaths files to stage as plain blobs in addition to the change
+     *                   set (e.g. metadata written after the scan)
+     */
+    public static void stage(Git git, File workTree, WorldStatCache.ChangeSet changes, Collection<String> extraPaths)
+            throws IOException, GitAPIException {
+        List<String> plain = new ArrayList<>();
+        Map<String, StorageCodec> encoded = new LinkedHashMap<>();
+        for (String path : changes.modified) {
+            StorageCodec codec = StorageCodecs.encoderFor(path, new File(workTree, path).length());
+            if (codec == null) {
+                plain.add(path);
+            } else {
+                encoded.put(path, codec);
+            }
+        }
+        for (String path : extraPaths) {
+            if (new File(workTree, path).exists()) {
+                plain.add(path);
+            }
+        }
+        if (!plain.isEmpty()) {
+            AddCommand add = git.add();
+            for (String path : plain) {
+                add.addFilepattern(path);
+            }
+            add.call();
+        }
+        if (!changes.removed.isEmpty()) {
+            RmCommand rm = git.rm().setCached(true);
+            for (String path : changes.removed) {
+                rm.addFilepattern(path);
+            }
+            rm.call();
+        }
+        editIndex(git.getRepository(), workTree, changes, encoded);
+    }
+
+    // Drops stale codec entries of every touched path and writes the encoded
+    // entries of codec-stored files
+    private static void editIndex(Repository repository, File workTree, WorldStatCache.ChangeSet changes,
+            Map<String, StorageCodec> encoded) throws IOException {
+        DirCache index = repository.lockDirCache();
+        try (ObjectInserter inserter = repository.newObjectInserter();
+                ObjectInserter.Formatter formatter = new ObjectInserter.Formatter()) {
+            DirCacheEditor editor = index.editor();
+            Set<String> touched = new HashSet<>(changes.modified);
+            touched.addAll(changes.removed);
+            for (String path : touched) {
+                if (!encoded.containsKey(path)) {
+                    deleteEntryDirs(editor, path, null);
+                }
+            }
+            for (Map.Entry<String, StorageCodec> file : encoded.entrySet()) {
+                String path = file.getKey();
+                StorageCodec codec = file.getValue();
+                Path source = workTree.toPath().resolve(path);
+                Map<String, ObjectId> ids = new LinkedHashMap<>();
+                Map<String, Long> sizes = new LinkedHashMap<>();
+                if (!(codec instanceof SplitFileCodec)) {
+                    byte[] content = Files.readAllBytes(source);
+                    Map<String, byte[]> entries = codec.encode(content);
+                    if (entries == null && StorageCodecs.fallbackFor(content.length) == null) {
+                        // Not encodable, keep the file as a plain blob
+                        changes.recordStaged(path, formatter.idFor(Constants.OBJ_BLOB, content));
+                        deleteEntryDirs(editor, path, null);
+                        editor.add(blobEdit(path, inserter.insert(Constants.OBJ_BLOB, content), content.length));
+                        continue;
+                    }
+                    if (entries == null) {
+                        // Too large to keep as one blob either way
+                        codec = StorageCodecs.fallbackFor(content.length);
+                    } else {
+                        changes.recordStaged(path, formatter.idFor(Constants.OBJ_BLOB, content));
+                        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                            ids.put(entry.getKey(), inserter.insert(Constants.OBJ_BLOB, entry.getValue()));
+                            sizes.put(entry.getKey(), (long) entry.getValue().length);
+                        }
+                    }
+                }
+                if (codec instanceof SplitFileCodec) {
+                    // Streamed from the file; it may not fit in memory
+                    SplitFileCodec.Inserted parts = ((SplitFileCodec) codec).insert(inserter, source);
+                    changes.recordStaged(path, parts.blob);
+                    ids = parts.entries;
+                    sizes = parts.sizes;
+                }
+                String entryDir = StorageCodecs.entryDir(path, codec);
+                editor.add(new DirCacheEditor.DeletePath(path));
+                deleteEntryDirs(editor, path, codec);
+                // Remove only entries the new encoding no longer has; deleting the
+                // whole directory and re-adding into it in one edit is not allowed
+                for (DirCacheEntry existing : index.getEntriesWithin(entryDir)) {
+                    String name = existing.getPathString().substring(entryDir.length() + 1);
+                    if (!ids.containsKey(name)) {
+                        editor.add(new DirCacheEditor.DeletePath(existing.getPathString()));
+                    }
+                }
+                for (Map.Entry<String, ObjectId> entry : ids.entrySet()) {
+                    editor.add(blobEdit(entryDir + "/" + entry.getKey(), entry.getValue(),
+                            sizes.get(entry.getKey())));
+                }
+            }
+            inserter.flush();
+            editor.finish();
+            index.write();
+            if (!index.commit()) {
+                throw new IOException("Could not write index");
+            }
+        } finally {
+            index.unlock();
+        }
+    }
+
+    // Drops the entries of every codec but the one the file is now stored with
+    private static void deleteEntryDirs(DirCacheEditor editor, String path, StorageCodec keep) {
+        for (StorageCodec codec : StorageCodecs.all()) {
+            if (codec != keep) {
+                editor.add(new DirCacheEditor.DeleteTree(StorageCodecs.entryDir(path, codec)));
+            }
+        }
+    }
+
+    private static DirCacheEditor.PathEdit blobEdit(String path, ObjectId id, long length) {
+        return new DirCacheEditor.PathEdit(path) {
+            @Override
+            public void apply(DirCacheEntry entry) {
+                entry.setFileMode(FileMode.REGULAR_FILE);
+                entry.setObjectId(id);
+                entry.setLength(length);
+            }
+        };
+    }
+}
@@ -0,0 +1,438 @@
+package com.tomesh.worldsyncer.core;
+
+import com.tomesh.worldsyncer.GithubBackupMod;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.ignore.IgnoreNode;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent (size, mtime, inode, content hash) record of every file in a
+ * world as of its last backup, kept in .git/worldsyncer-statcache.
+ * A scan only stats the tree and reports which paths changed, so the backup
+ * can stage exactly those files instead of hashing the whole save.
+ */
+public class WorldStatCache {
+    private static final String CACHE_FILE = "worldsyncer-statcache";
+    private static final String HEADER = "# worldsyncer statcache v1";
+    // Files this big are assumed changed when their stat changes; hashing a
+    // rewritten region file only to learn that it differs is wasted I/O
+    private static final long HASH_CHECK_LIMIT = 1024 * 1024;
+    // Files modified this close to a scan may change again within the same
+    // timestamp tick, so their stat is not trusted next time
+    private static final long RACY_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final File cacheFile;
+    private final Map<String, Entry> entries;
+    private final SparseProfile sparse;
+
+    private WorldStatCache(File cacheFile, Map<String, Entry> entries, SparseProfile sparse) {
+        this.cacheFile = cacheFile;
+        this.entries = entries;
+        this.sparse = sparse;
+    }
+
+    public static final class Entry {
+        final long size;
+        final long mtimeNanos;
+        final String fileKey;
+        final ObjectId hash;
+
+        Entry(long size, long mtimeNanos, String fileKey, ObjectId hash) {
+            this.size = size;
+            this.mtimeNanos = mtimeNanos;
+            this.fileKey = fileKey;
+            this.hash = hash;
+        }
+
+        Entry withHash(ObjectId newHash) {
+            return new Entry(size, mtimeNanos, fileKey, newHash);
+        }
+    }
+
+    /** Result of a scan: world-relative paths (forward slashes) that need staging. */
+    public static final class ChangeSet {
+        public final Set<String> modified = new HashSet<>();
+        public final Set<String> removed = new HashSet<>();
+        final Map<String, Entry> observed = new HashMap<>();
+        // Stat changed but content did not; only the cache needs updating
+        final Map<String, Entry> refreshed = new HashMap<>();
+        // Content hashes of files staged outside AddCommand (e.g. through a codec)
+        final Map<String, ObjectId> staged = new HashMap<>();
+        // Last DirtyFileTracker event the scan covered, -1 if it did not come from one
+        long trackedUpTo = -1;
+        private boolean initial;
+
+        /** Records the hash of a file's raw content when it was not staged as a plain blob. */
+        public void recordStaged(String path, ObjectId hash) {
+            staged.put(path, hash);
+        }
+
+        public boolean isEmpty() {
+            return modified.isEmpty() && removed.isEmpty();
+        }
+
+        /** True when there was no cache to compare against, so every file counts as modified. */
+        public boolean isInitial() {
+            return initial;
+        }
+
+        /**
+         * Splits the modified files into batches of at most {@code maxBytes}
+         * each, in path order; a larger file gets a batch of its own. Removals
+         * and stat-only changes go with the first batch. Returns just this
+         * change set if it fits in one batch.
+         */
+        public List<ChangeSet> split(long maxBytes) {
+            List<String> paths = new ArrayList<>(modified);
+            Collections.sort(paths);
+            List<ChangeSet> batches = new ArrayList<>();
+            ChangeSet batch = null;
+            long batchBytes = 0;
+            for (String path : paths) {
+                Entry entry = observed.get(path);
+                long size = entry == null ? 0 : entry.size;
+                if (batch == null || batchBytes > 0 && batchBytes + size > maxBytes) {
+                    batch = new ChangeSet();
+                    batch.initial = initial;
+                    batches.add(batch);
+                    batchBytes = 0;
+                }
+                batch.modified.add(path);
+                if (entry != null) {
+                    batch.observed.put(path, entry);
+                }
+                batchBytes += size;
+            }
+            if (batches.size() <= 1) {
+                return List.of(this);
+            }
+            ChangeSet first = batches.get(0);
+            first.removed.addAll(removed);
+            first.refreshed.putAll(refreshed);
+            return batches;
+        }
+    }
+
+    public static WorldStatCache load(File worldDir) {
+        File cacheFile = new File(new File(worldDir, ".git"), CACHE_FILE);
+        Map<String, Entry> entries = new HashMap<>();
+        if (cacheFile.exists()) {
+            try (BufferedReader reader = Files.newBufferedReader(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+                String line = reader.readLine();
+                if (HEADER.equals(line)) {
+                    while ((line = reader.readLine()) != null) {
+                        // size, mtime, inode, hash, path (last, may contain tabs)
+                        String[] parts = line.split("\t", 5);
+                        if (parts.length < 5) {
+                            continue;
+                        }
+                        ObjectId hash = parts[3].isEmpty() ? null : ObjectId.fromString(parts[3]);
+                        entries.put(parts[4], new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                                parts[2].isEmpty() ? null : parts[2], hash));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                GithubBackupMod.LOGGER.warn("Ignoring unreadable stat cache {}: {}", cacheFile, e.getMessage());
+                entries.clear();
+            }
+        }
+        return new WorldStatCache(cacheFile, entries, SparseProfile.load(worldDir));
+    }
+
+    /**
+     * Stats every non-ignored file under {@code dir} and compares it with the
+     * cache. Ignore rules come from the folder's .gitignore (or the mod's
+     * default one if it has none yet). Files outside the world's
+     * {@link SparseProfile} are neither reported nor reported removed.
+     */
+    public ChangeSet scan(File dir) throws IOException {
+        ChangeSet changes = new ChangeSet();
+        changes.initial = entries.isEmpty();
+        try (Visitor visitor = new Visitor(dir, changes)) {
+            Files.walkFileTree(visitor.root, visitor);
+        }
+        for (String path : entries.keySet()) {
+            if (!changes.observed.containsKey(path) && sparse.includes(path)) {
+                changes.removed.add(path);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Like {@link #scan(File)}, but only looks at the given paths: files,
+     * folders (their whole subtree) and paths that no longer exist. Every
+     * other file is taken to be as recorded, so the caller has to know what
+     * changed, e.g. from a {@link DirtyFileTracker}. Scans everything if
+     * there is no cache yet.
+     */
+    public ChangeSet scan(File dir, Collection<String> paths) throws IOException {
+        if (entries.isEmpty()) {
+            return scan(dir);
+        }
+        ChangeSet changes = new ChangeSet();
+        Set<String> gone = new HashSet<>();
+        try (Visitor visitor = new Visitor(dir, changes)) {
+            for (String path : paths) {
+                if (visitor.isExcludedFolder(path)) {
+                    continue;
+                }
+                Path file = visitor.root.resolve(path);
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (NoSuchFileException e) {
+                    gone.add(path);
+                    continue;
+                }
+                if (attrs.isDirectory()) {
+                    Files.walkFileTree(file, visitor);
+                    gone.add(path);
+                } else {
+                    visitor.visitFile(file, attrs);
+                }
+            }
+        }
+        for (String path : paths) {
+            if (entries.containsKey(path) && !changes.observed.containsKey(path) && sparse.includes(path)) {
+                changes.removed.add(path);
+            }
+        }
+        if (!gone.isEmpty()) {
+            // Deleting or renaming a folder may only report the folder itself
+            for (String path : entries.keySet()) {
+                int slash = path.lastIndexOf('/');
+                while (slash > 0 && !gone.contains(path.substring(0, slash))) {
+                    slash = path.lastIndexOf('/', slash - 1);
+                }
+                if (slash > 0 && !changes.observed.containsKey(path) && sparse.includes(path)) {
+                    changes.removed.add(path);
+                }
+            }
+        }
+        return changes;
+    }
+
+    // Compares the files it visits with the cache, adding what differs to a
+    // change set
+    private final class Visitor extends SimpleFileVisitor<Path> implements AutoCloseable {
+        final Path root;
+        private final ChangeSet changes;
+        private final IgnoreNode ignore;
+        private final long racyCutoff;
+        private final ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+
+        Visitor(File dir, ChangeSet changes) throws IOException {
+            this.root = dir.toPath();
+            this.changes = changes;
+            this.ignore = loadIgnoreRules(dir);
+            this.racyCutoff = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - RACY_WINDOW_NANOS;
+        }
+
+        // Whether a full scan would never get to a path because a folder
+        // above it is skipped
+        boolean isExcludedFolder(String path) {
+            for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+                String folder = path.substring(0, slash);
+                if (folder.equals(".git") || isIgnored(ignore, folder, true)) {
+                    return true;
+                }
+            }
+            return path.equals(".git");
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) {
+            if (path.equals(root)) {
+                return FileVisitResult.CONTINUE;
+            }
+            String rel = relativePath(root, path);
+            if (rel.equals(".git") || isIgnored(ignore, rel, true)) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
+            if (!attrs.isRegularFile()) {
+                return FileVisitResult.CONTINUE;
+            }
+            String rel = relativePath(root, path);
+            if (isIgnored(ignore, rel, false) || !sparse.includes(rel)) {
+                return FileVisitResult.CONTINUE;
+            }
+            long mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            Object key = attrs.fileKey();
+            // A racily clean stat is recorded with mtime 0 so the next scan
+            // never trusts it
+            Entry current = new Entry(attrs.size(), mtime >= racyCutoff ? 0 : mtime,
+                    key == null ? null : key.toString(), null);
+            changes.observed.put(rel, current);
+            Entry previous = entries.get(rel);
+            if (previous == null || previous.hash == null || previous.size != attrs.size()) {
+                changes.modified.add(rel);
+            } else if (previous.mtimeNanos == mtime && Objects.equals(previous.fileKey, current.fileKey)) {
+                changes.observed.put(rel, current.withHash(previous.hash));
+            } else if (attrs.size() <= HASH_CHECK_LIMIT && hashOf(formatter, path, attrs.size())
+                    .equals(previous.hash)) {
+                changes.refreshed.put(rel, current.withHash(previous.hash));
+            } else {
+                changes.modified.add(rel);
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path path, IOException exc) {
+            // Vanished mid-scan (e.g. a temp file); it will show up as removed
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public void close() {
+            formatter.close();
+        }
+    }
+
+    /**
+     * Records the outcome of a successful commit. Hashes of staged files are
+     * taken from the index the commit was made from.
+     */
+    public void apply(ChangeSet changes, DirCache index) {
+        for (String path : changes.removed) {
+            entries.remove(path);
+        }
+        entries.putAll(changes.refreshed);
+        for (String path : changes.modified) {
+            DirCacheEntry indexEntry = index.getEntry(path);
+            ObjectId hash = changes.staged.containsKey(path) ? changes.staged.get(path)
+                    : indexEntry != null ? indexEntry.getObjectId() : null;
+            Entry observed = changes.observed.get(path);
+            if (hash == null || observed == null) {
+                entries.remove(path);
+            } else {
+                entries.put(path, observed.withHash(hash));
+            }
+        }
+    }
+
+    /** Records a file just written to {@code root} with the given content hash. */
+    public void recordFile(File root, String path, ObjectId hash) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(root.toPath().resolve(path), BasicFileAttributes.class);
+            Object key = attrs.fileKey();
+            entries.put(path, new Entry(attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    key == null ? null : key.toString(), hash));
+        } catch (IOException e) {
+            entries.remove(path);
+        }
+    }
+
+    /** Whether a recorded file is still exactly as recorded, going by its stat. */
+    public boolean isUnchanged(File root, String path) {
+        Entry entry = entries.get(path);
+        if (entry == null || entry.hash == null || entry.mtimeNanos == 0) {
+            return false;
+        }
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(root.toPath().resolve(path), BasicFileAttributes.class);
+            Object key = attrs.fileKey();
+            return attrs.size() == entry.size && attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS) == entry.mtimeNanos
+                    && Objects.equals(key == null ? null : key.toString(), entry.fileKey);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public SparseProfile getSparseProfile() {
+        return sparse;
+    }
+
+    public void forget(String path) {
+        entries.remove(path);
+    }
+
+    public void save() throws IOException {
+        File dir = cacheFile.getParentFile();
+        if (!dir.exists()) {
+            return;
+        }
+        File tmp = new File(dir, CACHE_FILE + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                writer.write(entry.size + "\t" + entry.mtimeNanos + "\t"
+                        + (entry.fileKey == null ? "" : entry.fileKey.replace('\t', ' ')) + "\t"
+                        + (entry.hash == null ? "" : entry.hash.name()) + "\t" + e.getKey());
+                writer.newLine();
+            }
+        }
+        Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Paths currently recorded, i.e. the files of the last backup. */
+    public Set<String> getPaths() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    private static IgnoreNode loadIgnoreRules(File dir) throws IOException {
+        IgnoreNode ignore = new IgnoreNode();
+        File gitignore = new File(dir, ".gitignore");
+        if (gitignore.exists()) {
+            try (InputStream in = Files.newInputStream(gitignore.toPath())) {
+                ignore.parse(in);
+            }
+        } else {
+            ignore.parse(new ByteArrayInputStream(GithubService.DEFAULT_GITIGNORE.getBytes(StandardCharsets.UTF_8)));
+        }
+        return ignore;
+    }
+
+    private static boolean isIgnored(IgnoreNode ignore, String path, boolean directory) {
+        return ignore.isIgnored(path, directory) == IgnoreNode.MatchResult.IGNORED;
+    }
+
+    private static String relativePath(Path root, Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private static ObjectId hashOf(ObjectInserter.Formatter formatter, Path file, long size) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return formatter.idFor(Constants.OBJ_BLOB, size, in);
+        }
+    }
+}
@@ -4,7 +4,10 @@ import com.tomesh.worldsyncer.ClientInit;
 import com.tomesh.worldsyncer.GithubBackupMod;
 import com.tomesh.worldsyncer.config.ModConfig;
 import com.tomesh.worldsyncer.config.ModConfig.WorldBackupEntry;
+import com.tomesh.worldsyncer.core.DirtyFileTracker;
 import com.tomesh.worldsyncer.core.GithubService;
+import com.tomesh.worldsyncer.core.WorldSnapshot;
+import com.tomesh.worldsyncer.core.WorldStatCache;
 
 import net.minecraft.registry.RegistryKey; // Import RegistryKey
 import net.minecraft.server.integrated.IntegratedServer;
@@ -17,14 +20,29 @@ import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.toast.SystemToast;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 @Mixin(IntegratedServer.class)
 public abstract class IntegratedServerMixin {
-    @Inject(method = "shutdown", at = @At("HEAD"))
+    // The world is loaded and about to be played; from here on the game's
+    // writes are tracked so the backup at shutdown only looks at those
+    @Inject(method = "setupServer", at = @At("RETURN"))
+    private void onServerSetup(CallbackInfoReturnable<Boolean> cir) {
+        if (cir.getReturnValueZ()) {
+            IntegratedServer server = (IntegratedServer) (Object) this;
+            DirtyFileTracker.start(server.getSavePath(WorldSavePath.ROOT).normalize().toFile());
+        }
+    }
+
+    // TAIL: the world has been saved and its session lock released, so the
+    // snapshot below sees a consistent save
+    @Inject(method = "shutdown", at = @At("TAIL"))
     private void onServerShutdown(CallbackInfo ci) {
         ModConfig config = GithubBackupMod.getConfig();
         GithubService service = ClientInit.getGithubService();
@@ -39,12 +57,15 @@ public abstract class IntegratedServerMixin {
             }
         }
         final String finalWorldDirName = worldDirName;
+        // ROOT resolves to "<world>/.", which would make "." the folder name
+        File worldDir = worldFullPath.normalize().toFile();
         String key = ModConfig.worldKey(finalWorldDirName);
 
         GithubBackupMod.LOGGER.info("[WorldSaver] Shutdown hook running for world '{}'. backedUpWorlds: {}",
                 finalWorldDirName, config.backedUpWorlds);
 
         if (service == null) {
+            DirtyFileTracker.stop(worldDir);
             GithubBackupMod.LOGGER.warn(
                     "IntegratedServerMixin: GithubService is null. Cannot backup world {} on shutdown.",
                     finalWorldDirName);
@@ -53,6 +74,21 @@ public abstract class IntegratedServerMixin {
 
         WorldBackupEntry entry = config.backedUpWorlds.get(key);
         if (entry != null && entry.enabled) {
+            // Snapshot now (milliseconds with links/reflinks) so the world can be
+            // reopened right away while commit and push run from the copy. The stat
+            // cache scan limits the copy to files changed since the last backup.
+            // Without reflinks, region files are copied in the background.
+            WorldSnapshot snapshot = null;
+            try {
+                WorldStatCache.ChangeSet changes = DirtyFileTracker.scan(worldDir);
+                snapshot = WorldSnapshot.createInBackground(worldDir, GithubService.getStagingDir().toFile(), changes);
+            } catch (IOException e) {
+                GithubBackupMod.LOGGER.warn("Could not snapshot world '{}', backing up live folder instead: {}",
+                        finalWorldDirName, e.getMessage());
+            } finally {
+                DirtyFileTracker.stop(worldDir);
+            }
+            final WorldSnapshot finalSnapshot = snapshot;
             String repoFullName = entry.repoFullName;
             if (repoFullName == null || repoFullName.isEmpty() || !repoFullName.contains("/")) {
                 GithubBackupMod.LOGGER.info("No valid repo for world '{}', creating private repo...",
@@ -65,7 +101,7 @@ public abstract class IntegratedServerMixin {
                                 me.shedaniel.autoconfig.AutoConfig.getConfigHolder(ModConfig.class).save();
                                 GithubBackupMod.LOGGER.info("Created and saved repo '{}' for world '{}'", createdRepo,
                                         finalWorldDirName);
-                                service.backupWorld(worldFullPath.toFile(), createdRepo)
+                                backup(service, worldDir, finalSnapshot, createdRepo)
                                         .whenComplete((v, ex) -> {
                                             if (ex == null) {
                                                 showSyncToast(
@@ -78,6 +114,9 @@ public abstract class IntegratedServerMixin {
                             } else {
                                 GithubBackupMod.LOGGER.error("Failed to create repo for world '{}', skipping backup.",
                                         finalWorldDirName);
+                                if (finalSnapshot != null) {
+                                    finalSnapshot.discard();
+                                }
                                 showSyncToast("World Saver: Sync FAILED for '" + finalWorldDirName + "'.");
                             }
                         });
@@ -85,7 +124,7 @@ public abstract class IntegratedServerMixin {
                 GithubBackupMod.LOGGER.info("Integrated server shutting down. World: {}. Backing up to GitHub repo: {}",
                         finalWorldDirName, repoFullName);
                 showSyncToast("World Saver: Starting sync for '" + finalWorldDirName + "'...");
-                service.backupWorld(worldFullPath.toFile(), repoFullName)
+                backup(service, worldDir, finalSnapshot, repoFullName)
                         .whenComplete((v, ex) -> {
                             if (ex == null) {
                                 showSyncToast("World Saver: Sync complete for '" + finalWorldDirName + "'.");
@@ -94,7 +133,17 @@ public abstract class IntegratedServerMixin {
                             }
                         });
             }
+        } else {
+            DirtyFileTracker.stop(worldDir);
+        }
+    }
+
+    private static CompletableFuture<Void> backup(GithubService service, File worldDir, WorldSnapshot snapshot,
+            String repoFullName) {
+        if (snapshot != null) {
+            return service.backupSnapshot(snapshot, repoFullName);
         }
+        return service.backupWorld(worldDir, repoFullName);
     }
 
     private void showSyncToast(String message) {
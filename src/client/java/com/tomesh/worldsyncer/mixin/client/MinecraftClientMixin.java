@@ -0,0 +1,21 @@
+package com.tomesh.worldsyncer.mixin.client;
+
+import com.tomesh.worldsyncer.ExitFlushScreen;
+
+import net.minecraft.client.MinecraftClient;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(MinecraftClient.class)
+public abstract class MinecraftClientMixin {
+    // Quit Game and closing the window both end up here; once the game stops,
+    // the daemon sync threads die with any push still running
+    @Inject(method = "scheduleStop", at = @At("HEAD"), cancellable = true)
+    private void githubBackup_flushBeforeStop(CallbackInfo ci) {
+        if (ExitFlushScreen.holdExit((MinecraftClient) (Object) this)) {
+            ci.cancel();
+        }
+    }
+}
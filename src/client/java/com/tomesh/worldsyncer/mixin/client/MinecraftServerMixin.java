@@ -0,0 +1,54 @@
+package com.tomesh.worldsyncer.mixin.client;
+
+import com.tomesh.worldsyncer.ClientInit;
+import com.tomesh.worldsyncer.GithubBackupMod;
+import com.tomesh.worldsyncer.StorageWrites;
+import com.tomesh.worldsyncer.config.ModConfig;
+import com.tomesh.worldsyncer.config.ModConfig.WorldBackupEntry;
+import com.tomesh.worldsyncer.core.GithubService;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.integrated.IntegratedServer;
+import net.minecraft.util.WorldSavePath;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+
+@Mixin(MinecraftServer.class)
+public abstract class MinecraftServerMixin {
+    // Autosave, pausing and /save-all all end here. The final save at shutdown
+    // runs after the server stopped running and is left to IntegratedServerMixin
+    @Inject(method = "saveAll", at = @At("RETURN"))
+    private void githubBackup_onSaveAll(boolean suppressLogs, boolean flush, boolean force,
+            CallbackInfoReturnable<Boolean> cir) {
+        MinecraftServer server = (MinecraftServer) (Object) this;
+        if (!(server instanceof IntegratedServer) || !server.isRunning()) {
+            return;
+        }
+        ModConfig config = GithubBackupMod.getConfig();
+        GithubService service = ClientInit.getGithubService();
+        if (config == null || !config.autosaveBackups || service == null) {
+            return;
+        }
+        File worldDir = server.getSavePath(WorldSavePath.ROOT).normalize().toFile();
+        WorldBackupEntry entry = config.getBackupEntry(worldDir.getName());
+        // Repos are only created by the backup at shutdown
+        if (entry == null || !entry.enabled || entry.repoFullName == null || !entry.repoFullName.contains("/")) {
+            return;
+        }
+        // An autosave does not flush: the chunks it saved are still queued on
+        // the IO workers, and scanning now could commit half-written regions
+        StorageWrites.completeAll(worldDir.toPath()).thenCompose(written -> {
+            var job = service.checkpointWorld(worldDir, entry.repoFullName);
+            return job != null ? job : CompletableFuture.<Void>completedFuture(null);
+        }).exceptionally(ex -> {
+            GithubBackupMod.LOGGER.error("Autosave backup failed for world {}: {}", worldDir.getName(),
+                    ex.getMessage(), ex);
+            return null;
+        });
+    }
+}
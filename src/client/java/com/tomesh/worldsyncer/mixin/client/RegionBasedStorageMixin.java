@@ -0,0 +1,33 @@
+package com.tomesh.worldsyncer.mixin.client;
+
+import com.tomesh.worldsyncer.core.LazyRestore;
+import com.tomesh.worldsyncer.core.WorldSnapshot;
+
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.storage.RegionBasedStorage;
+import net.minecraft.world.storage.RegionFile;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import java.nio.file.Path;
+
+@Mixin(RegionBasedStorage.class)
+public abstract class RegionBasedStorageMixin {
+    @Shadow
+    @Final
+    private Path directory;
+
+    // Chunks, entities and POIs are all read and written through here; a
+    // region still being restored would otherwise be generated from scratch,
+    // and one still being copied for a backup would change under the copy
+    @Inject(method = "getRegionFile", at = @At("HEAD"))
+    private void githubBackup_awaitRestoredRegion(ChunkPos pos, CallbackInfoReturnable<RegionFile> cir) {
+        Path file = directory.resolve("r." + pos.getRegionX() + "." + pos.getRegionZ() + ".mca");
+        LazyRestore.awaitFile(file);
+        WorldSnapshot.awaitFile(file);
+    }
+}
@@ -21,6 +21,8 @@ import net.minecraft.world.level.storage.LevelSummary;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
 
 @Mixin(SelectWorldScreen.class)
 public abstract class SelectWorldScreenMixin extends Screen {
@@ -39,9 +41,10 @@ public abstract class SelectWorldScreenMixin extends Screen {
             return;
         }
 
-        if (config.githubAccessToken == null || config.githubAccessToken.isEmpty()) {
+        if (service.getBackend().getSetupProblem() != null) {
             GithubBackupMod.LOGGER
-                    .info("SelectWorldScreen: GitHub Backup not configured (no token). Skipping auto-pull/clone.");
+                    .info("SelectWorldScreen: GitHub Backup not configured ({}). Skipping auto-pull/clone.",
+                            service.getBackend().getSetupProblem());
             return;
         }
 
@@ -49,16 +52,26 @@ public abstract class SelectWorldScreenMixin extends Screen {
                 .info("SelectWorldScreen initialized/reloaded. Checking for updates for backed up worlds.");
         Path savesDir = GithubService.getSavesDir(); // Static method in GithubService is fine
 
+        Map<String, String> worlds = new HashMap<>();
         config.backedUpWorlds.forEach((worldDirName, entry) -> {
             if (entry != null && entry.enabled && entry.repoFullName != null && !entry.repoFullName.isEmpty()) {
-                File worldFullPath = savesDir.resolve(worldDirName).toFile();
-                service.pullWorld(worldFullPath, entry.repoFullName)
-                        .exceptionally(ex -> {
-                            GithubBackupMod.LOGGER.error("Exception during auto-pull/clone for world {}: {}",
-                                    worldDirName, ex.getMessage(), ex);
-                            return null;
-                        });
+                worlds.put(worldDirName, entry.repoFullName);
             }
         });
+        // Only worlds whose remote main moved (or that are not cloned yet) get a
+        // fetch; everything else is already up to date
+        service.findWorldsNeedingPull(worlds).thenAccept(stale -> stale.forEach(worldDirName -> {
+            File worldFullPath = savesDir.resolve(worldDirName).toFile();
+            service.pullWorld(worldFullPath, worlds.get(worldDirName))
+                    .exceptionally(ex -> {
+                        GithubBackupMod.LOGGER.error("Exception during auto-pull/clone for world {}: {}",
+                                worldDirName, ex.getMessage(), ex);
+                        return null;
+                    });
+        })).exceptionally(ex -> {
+            GithubBackupMod.LOGGER.error("Exception while checking worlds for remote changes: {}", ex.getMessage(),
+                    ex);
+            return null;
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.tomesh.worldsyncer.mixin.client;
+
+import com.tomesh.worldsyncer.StorageWrites;
+
+import net.minecraft.world.storage.StorageIoWorker;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.nio.file.Path;
+
+@Mixin(StorageIoWorker.class)
+public abstract class StorageIoWorkerMixin {
+    // One worker per folder of region files: chunks, entities and POIs of
+    // every dimension
+    @Inject(method = "<init>", at = @At("RETURN"))
+    private void githubBackup_onOpen(Path directory, boolean dsync, String name, CallbackInfo ci) {
+        StorageWrites.opened((StorageIoWorker) (Object) this, directory);
+    }
+
+    // A closed worker never completes what is asked of it
+    @Inject(method = "close", at = @At("HEAD"))
+    private void githubBackup_onClose(CallbackInfo ci) {
+        StorageWrites.closed((StorageIoWorker) (Object) this);
+    }
+}
@@ -0,0 +1,124 @@
+package com.tomesh.worldsyncer.bench;
+
+import com.tomesh.worldsyncer.core.WorldStatCache;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One incremental backup of a played world, phase by phase: the stat cache
+ * scan alone, scan plus staging and commit, and the whole backup including
+ * packing and pushing to a local bare repository. Every invocation first
+ * changes {@code churn} of the world's chunks, like a play session between
+ * two backups. The backup benchmark also reports the bytes each push
+ * uploaded, the figure {@code regionStorage} is meant to bring down.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BackupBenchmark {
+    @Param({ "16", "64" })
+    public int regions;
+
+    @Param({ "512" })
+    public int chunksPerRegion;
+
+    @Param({ "0.01", "0.1" })
+    public double churn;
+
+    @Param({ "4" })
+    public int players;
+
+    @Param({ "plain", "chunks", "inflated" })
+    public String regionStorage;
+
+    private Path root;
+    private SyntheticWorld world;
+    private File remote;
+    private Git git;
+    private long changedBytes;
+    private Set<String> packsBefore;
+
+    /**
+     * Bytes of world files changed and bytes pushed per operation, for MB/s
+     * and upload size next to the timings.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Traffic {
+        public long changedBytes;
+        public long pushedBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void createWorld() throws Exception {
+        BenchRepos.installConfig(regionStorage);
+        root = Files.createTempDirectory("worldsyncer-bench");
+        world = SyntheticWorld.generate(root.resolve("world"), regions, chunksPerRegion, players, 42);
+        remote = BenchRepos.createRemote(root.resolve("remotes"));
+        git = BenchRepos.initWorld(world.getDir(), remote);
+        BenchRepos.commit(git);
+        BenchRepos.push(git);
+    }
+
+    @Setup(Level.Invocation)
+    public void play() throws Exception {
+        world.mutate(churn);
+        changedBytes = 0;
+        for (String path : BenchRepos.scan(world.getDir().toFile()).modified) {
+            changedBytes += world.getDir().resolve(path).toFile().length();
+        }
+        packsBefore = BenchRepos.packs(remote);
+    }
+
+    // The scan benchmark commits nothing; catch up so every invocation starts
+    // from one play session of changes
+    @TearDown(Level.Invocation)
+    public void settle() throws Exception {
+        BenchRepos.commit(git);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteWorld() throws Exception {
+        git.close();
+        BenchRepos.deleteTree(root);
+    }
+
+    @Benchmark
+    public WorldStatCache.ChangeSet scan(Traffic traffic) throws Exception {
+        traffic.changedBytes += changedBytes;
+        return BenchRepos.scan(world.getDir().toFile());
+    }
+
+    @Benchmark
+    public RevCommit stageAndCommit(Traffic traffic) throws Exception {
+        traffic.changedBytes += changedBytes;
+        return BenchRepos.commit(git);
+    }
+
+    @Benchmark
+    public RevCommit backup(Traffic traffic) throws Exception {
+        traffic.changedBytes += changedBytes;
+        RevCommit commit = BenchRepos.commit(git);
+        BenchRepos.push(git);
+        traffic.pushedBytes += BenchRepos.pushedBytes(remote, packsBefore);
+        return commit;
+    }
+}
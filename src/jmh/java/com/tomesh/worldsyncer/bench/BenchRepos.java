@@ -0,0 +1,206 @@
+package com.tomesh.worldsyncer.bench;
+
+import com.tomesh.worldsyncer.GithubBackupMod;
+import com.tomesh.worldsyncer.config.ModConfig;
+import com.tomesh.worldsyncer.core.LocalBackend;
+import com.tomesh.worldsyncer.core.WorldRestorer;
+import com.tomesh.worldsyncer.core.WorldStager;
+import com.tomesh.worldsyncer.core.WorldStatCache;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.internal.storage.file.PackIndex;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.URIish;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The backup and restore steps of GithubService without Minecraft or GitHub:
+ * the same stat cache scan, staging, commit and restore code, pushing to and
+ * cloning from a bare repository over file://.
+ */
+final class BenchRepos {
+    private static final String GITIGNORE = "session.lock\nlogs/\ncrash-reports/\n*.tmp\n";
+
+    private BenchRepos() {
+    }
+
+    /**
+     * Installs a default config, since AutoConfig cannot load one outside the
+     * game. Storage options the benchmark varies are set on the returned config.
+     */
+    static ModConfig installConfig() {
+        ModConfig config = new ModConfig();
+        try {
+            Field field = GithubBackupMod.class.getDeclaredField("config");
+            field.setAccessible(true);
+            field.set(null, config);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot install benchmark config", e);
+        }
+        return config;
+    }
+
+    /**
+     * Installs a default config storing region files as given: {@code plain},
+     * {@code chunks} (one entry per chunk) or {@code inflated} (chunks stored
+     * uncompressed).
+     */
+    static ModConfig installConfig(String regionStorage) {
+        ModConfig config = installConfig();
+        switch (regionStorage) {
+            case "plain":
+                break;
+            case "chunks":
+                config.chunkedRegionStorage = true;
+                break;
+            case "inflated":
+                config.chunkedRegionStorage = true;
+                config.uncompressedChunkStorage = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown region storage " + regionStorage);
+        }
+        return config;
+    }
+
+    /**
+     * Creates the world's target in a {@link LocalBackend} rooted at
+     * {@code dir}, the way the mod does for LAN and disk backups, and returns
+     * its bare repository.
+     */
+    static File createRemote(Path dir) throws IOException {
+        LocalBackend backend = new LocalBackend(dir.toString());
+        String target = backend.createTarget("bench");
+        return new File(URI.create(backend.remoteUrl(target)));
+    }
+
+    /** Turns a world folder into a world repository pushing to {@code remote}. */
+    static Git initWorld(Path worldDir, File remote) throws GitAPIException, IOException, URISyntaxException {
+        Git git = Git.init().setDirectory(worldDir.toFile()).setInitialBranch("main").call();
+        git.remoteAdd().setName("origin").setUri(new URIish(remote.toURI().toURL())).call();
+        Files.writeString(worldDir.resolve(".gitignore"), GITIGNORE, StandardCharsets.UTF_8);
+        return git;
+    }
+
+    static WorldStatCache.ChangeSet scan(File worldDir) throws IOException {
+        return WorldStatCache.load(worldDir).scan(worldDir);
+    }
+
+    /**
+     * Scans, stages and commits like a backup. Returns null if nothing
+     * changed.
+     */
+    static RevCommit commit(Git git) throws GitAPIException, IOException {
+        File worldDir = git.getRepository().getWorkTree();
+        WorldStatCache statCache = WorldStatCache.load(worldDir);
+        WorldStatCache.ChangeSet changes = statCache.scan(worldDir);
+        if (changes.isEmpty() && git.getRepository().resolve("HEAD") != null) {
+            return null;
+        }
+        WorldStager.stage(git, worldDir, changes, List.of(".gitignore"));
+        RevCommit commit = git.commit().setMessage("Benchmark backup").setAuthor("Benchmark", "bench@local")
+                .call();
+        statCache.apply(changes, git.getRepository().readDirCache());
+        statCache.save();
+        return commit;
+    }
+
+    static void push(Git git) throws GitAPIException {
+        git.push().setRemote("origin").add("refs/heads/main:refs/heads/main").setThin(true).call();
+    }
+
+    /** Names of the pack files of a repository. */
+    static Set<String> packs(File repository) {
+        String[] names = new File(repository, "objects/pack").list((dir, name) -> name.endsWith(".pack"));
+        return names == null ? Set.of() : Set.of(names);
+    }
+
+    /**
+     * Bytes pushed to a repository since it had the packs {@code before}. A
+     * thin pack refers to objects the remote already has, and receiving it
+     * appends those to the stored pack, so they are not counted.
+     */
+    static long pushedBytes(File repository, Set<String> before) throws IOException {
+        File packDir = new File(repository, "objects/pack");
+        List<PackIndex> old = new ArrayList<>();
+        for (String name : before) {
+            old.add(PackIndex.open(new File(packDir, name.replace(".pack", ".idx"))));
+        }
+        long total = 0;
+        for (String name : packs(repository)) {
+            if (before.contains(name)) {
+                continue;
+            }
+            File pack = new File(packDir, name);
+            PackIndex index = PackIndex.open(new File(packDir, name.replace(".pack", ".idx")));
+            List<long[]> objects = new ArrayList<>();
+            for (PackIndex.MutableEntry entry : index) {
+                ObjectId id = entry.toObjectId();
+                boolean appended = old.stream().anyMatch(idx -> idx.hasObject(id));
+                objects.add(new long[] { entry.getOffset(), appended ? 1 : 0 });
+            }
+            objects.sort((a, b) -> Long.compare(a[0], b[0]));
+            total += pack.length();
+            // An object's size is the distance to the next one; the pack ends
+            // with a 20 byte checksum
+            for (int i = 0; i < objects.size(); i++) {
+                long end = i + 1 < objects.size() ? objects.get(i + 1)[0] : pack.length() - 20;
+                if (objects.get(i)[1] == 1) {
+                    total -= end - objects.get(i)[0];
+                }
+            }
+        }
+        return total;
+    }
+
+    /** Clones without checkout and writes the tip with the restorer, like cloneWorld. */
+    static Git cloneAndRestore(File remote, Path target, int depth) throws GitAPIException, IOException {
+        var clone = Git.cloneRepository()
+                .setURI(remote.toURI().toString())
+                .setDirectory(target.toFile())
+                .setBranch("main")
+                .setNoCheckout(true);
+        if (depth > 0) {
+            clone.setDepth(depth);
+        }
+        Git git = clone.call();
+        ObjectId tip = git.getRepository().resolve("refs/remotes/origin/main");
+        new WorldRestorer(git.getRepository()).restore(tip);
+        return git;
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
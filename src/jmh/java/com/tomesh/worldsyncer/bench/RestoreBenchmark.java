@@ -0,0 +1,101 @@
+package com.tomesh.worldsyncer.bench;
+
+import com.tomesh.worldsyncer.core.WorldRestorer;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting a world from a remote with {@code history} backups: a fresh clone
+ * (shallow or full) until the world is playable, and the restore a pull does
+ * when the remote is one backup ahead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RestoreBenchmark {
+    @Param({ "16" })
+    public int regions;
+
+    @Param({ "512" })
+    public int chunksPerRegion;
+
+    @Param({ "20" })
+    public int history;
+
+    @Param({ "0.05" })
+    public double churn;
+
+    @Param({ "1", "0" })
+    public int depth;
+
+    @Param({ "plain", "chunks", "inflated" })
+    public String regionStorage;
+
+    private Path root;
+    private File remote;
+    private Path cloneDir;
+    private Git pulled;
+    private ObjectId previous;
+    private ObjectId tip;
+
+    @Setup(Level.Trial)
+    public void createHistory() throws Exception {
+        BenchRepos.installConfig(regionStorage);
+        root = Files.createTempDirectory("worldsyncer-bench");
+        SyntheticWorld world = SyntheticWorld.generate(root.resolve("world"), regions, chunksPerRegion, 4, 42);
+        remote = BenchRepos.createRemote(root.resolve("remotes"));
+        try (Git git = BenchRepos.initWorld(world.getDir(), remote)) {
+            BenchRepos.commit(git);
+            for (int i = 1; i < history; i++) {
+                world.mutate(churn);
+                BenchRepos.commit(git);
+            }
+            BenchRepos.push(git);
+            tip = git.getRepository().resolve("refs/heads/main");
+            previous = git.getRepository().resolve("refs/heads/main~1");
+        }
+        cloneDir = root.resolve("clone");
+        pulled = BenchRepos.cloneAndRestore(remote, root.resolve("pulled"), 0);
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() throws Exception {
+        BenchRepos.deleteTree(cloneDir);
+        // One backup behind, as when another machine pushed since the last pull
+        new WorldRestorer(pulled.getRepository()).restore(previous);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteHistory() throws Exception {
+        pulled.close();
+        BenchRepos.deleteTree(root);
+    }
+
+    @Benchmark
+    public ObjectId cloneAndRestore() throws Exception {
+        try (Git git = BenchRepos.cloneAndRestore(remote, cloneDir, depth)) {
+            return git.getRepository().resolve("HEAD");
+        }
+    }
+
+    @Benchmark
+    public int restoreNextBackup() throws Exception {
+        return new WorldRestorer(pulled.getRepository()).restore(tip);
+    }
+}
@@ -0,0 +1,90 @@
+package com.tomesh.worldsyncer.bench;
+
+import com.tomesh.worldsyncer.core.WorldSnapshot;
+import com.tomesh.worldsyncer.core.WorldStatCache;
+
+import org.eclipse.jgit.api.Git;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long the shutdown hook holds a world before it can be reopened: the
+ * stat cache scan plus a snapshot of the changed files, against a full
+ * snapshot of the world without a stat cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SnapshotBenchmark {
+    @Param({ "16", "64" })
+    public int regions;
+
+    @Param({ "512" })
+    public int chunksPerRegion;
+
+    @Param({ "0.01", "0.1" })
+    public double churn;
+
+    private Path root;
+    private File staging;
+    private SyntheticWorld world;
+    private Git git;
+    private WorldSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void createWorld() throws Exception {
+        BenchRepos.installConfig();
+        root = Files.createTempDirectory("worldsyncer-bench");
+        staging = Files.createDirectories(root.resolve("staging")).toFile();
+        world = SyntheticWorld.generate(root.resolve("world"), regions, chunksPerRegion, 4, 42);
+        git = BenchRepos.initWorld(world.getDir(), BenchRepos.createRemote(root.resolve("remotes")));
+        BenchRepos.commit(git);
+    }
+
+    @Setup(Level.Invocation)
+    public void play() throws Exception {
+        world.mutate(churn);
+    }
+
+    @TearDown(Level.Invocation)
+    public void discard() throws Exception {
+        if (snapshot != null) {
+            snapshot.discard();
+            snapshot = null;
+        }
+        BenchRepos.commit(git);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteWorld() throws Exception {
+        git.close();
+        BenchRepos.deleteTree(root);
+    }
+
+    @Benchmark
+    public WorldSnapshot changedFiles() throws Exception {
+        File worldDir = world.getDir().toFile();
+        WorldStatCache.ChangeSet changes = WorldStatCache.load(worldDir).scan(worldDir);
+        snapshot = WorldSnapshot.create(worldDir, staging, changes);
+        return snapshot;
+    }
+
+    @Benchmark
+    public WorldSnapshot wholeWorld() throws Exception {
+        snapshot = WorldSnapshot.create(world.getDir().toFile(), staging);
+        return snapshot;
+    }
+}
@@ -0,0 +1,229 @@
+package com.tomesh.worldsyncer.bench;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A generated world folder shaped like a real save: Anvil region files with
+ * zlib-compressed chunks, level.dat, and per-player data, stats and
+ * advancement files. {@link #mutate} changes a share of the chunks in place
+ * the way the game does, so successive backups see realistic churn.
+ */
+public final class SyntheticWorld {
+    private static final int SECTOR_BYTES = 4096;
+    private static final int HEADER_BYTES = 2 * SECTOR_BYTES;
+    private static final int CHUNKS_PER_REGION = 1024;
+    // Roughly what a chunk's NBT inflates to; compresses about 4:1 like terrain
+    private static final int CHUNK_NBT_BYTES = 24 * 1024;
+    // Blocks placed or broken in a chunk that is saved again
+    private static final int MAX_EDITS_PER_CHUNK = 4;
+
+    private final Path dir;
+    private final List<Path> regions = new ArrayList<>();
+    private final List<Path> playerFiles = new ArrayList<>();
+    private final int chunksPerRegion;
+    private final Random random;
+    private int generation;
+
+    private SyntheticWorld(Path dir, int chunksPerRegion, long seed) {
+        this.dir = dir;
+        this.chunksPerRegion = Math.min(chunksPerRegion, CHUNKS_PER_REGION);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Writes a world with {@code regionCount} region files of
+     * {@code chunksPerRegion} chunks each and {@code players} players.
+     */
+    public static SyntheticWorld generate(Path dir, int regionCount, int chunksPerRegion, int players, long seed)
+            throws IOException {
+        SyntheticWorld world = new SyntheticWorld(dir, chunksPerRegion, seed);
+        Files.createDirectories(dir.resolve("region"));
+        Files.createDirectories(dir.resolve("playerdata"));
+        Files.createDirectories(dir.resolve("stats"));
+        Files.createDirectories(dir.resolve("advancements"));
+        int side = (int) Math.ceil(Math.sqrt(regionCount));
+        for (int i = 0; i < regionCount; i++) {
+            Path region = dir.resolve("region").resolve("r." + (i % side) + "." + (i / side) + ".mca");
+            world.writeRegion(region);
+            world.regions.add(region);
+        }
+        for (int i = 0; i < players; i++) {
+            String uuid = new UUID(seed, i).toString();
+            world.playerFiles.add(dir.resolve("playerdata").resolve(uuid + ".dat"));
+            world.playerFiles.add(dir.resolve("stats").resolve(uuid + ".json"));
+            world.playerFiles.add(dir.resolve("advancements").resolve(uuid + ".json"));
+        }
+        world.writeSmallFiles();
+        return world;
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    /**
+     * Edits a few blocks in {@code churn} (0 to 1) of all chunks and saves them
+     * again, plus level.dat and every player file, like one autosave of a
+     * played world.
+     */
+    public void mutate(double churn) throws IOException {
+        generation++;
+        for (Path region : regions) {
+            try (RandomAccessFile file = new RandomAccessFile(region.toFile(), "rw")) {
+                for (int index = 0; index < chunksPerRegion; index++) {
+                    if (random.nextDouble() < churn) {
+                        rewriteChunk(file, index);
+                    }
+                }
+            }
+        }
+        writeSmallFiles();
+    }
+
+    private void writeRegion(Path region) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(region.toFile(), "rw")) {
+            file.setLength(HEADER_BYTES);
+            for (int index = 0; index < chunksPerRegion; index++) {
+                appendChunk(file, index, compressedChunk());
+            }
+        }
+    }
+
+    // Fits the new data into the chunk's sectors, or moves it to the end of the
+    // file (leaving a gap) when it grew, as the game's RegionFile does
+    private void rewriteChunk(RandomAccessFile file, int index) throws IOException {
+        file.seek(index * 4L);
+        int location = file.readInt();
+        int sectors = location & 0xFF;
+        file.seek((location >>> 8) * (long) SECTOR_BYTES);
+        byte[] old = new byte[file.readInt() - 1];
+        file.readByte();
+        file.readFully(old);
+        byte[] data = deflate(edit(inflate(old)));
+        if (sectorsFor(data) <= sectors) {
+            writeChunk(file, (location >>> 8) * (long) SECTOR_BYTES, data);
+            writeTimestamp(file, index);
+        } else {
+            appendChunk(file, index, data);
+        }
+    }
+
+    private void appendChunk(RandomAccessFile file, int index, byte[] data) throws IOException {
+        long offset = file.length();
+        int sectors = sectorsFor(data);
+        file.setLength(offset + (long) sectors * SECTOR_BYTES);
+        writeChunk(file, offset, data);
+        file.seek(index * 4L);
+        file.writeInt((int) (offset / SECTOR_BYTES) << 8 | sectors);
+        writeTimestamp(file, index);
+    }
+
+    private static void writeChunk(RandomAccessFile file, long offset, byte[] data) throws IOException {
+        file.seek(offset);
+        file.writeInt(data.length + 1);
+        file.writeByte(2);
+        file.write(data);
+    }
+
+    private void writeTimestamp(RandomAccessFile file, int index) throws IOException {
+        file.seek(SECTOR_BYTES + index * 4L);
+        file.writeInt(generation);
+    }
+
+    private static int sectorsFor(byte[] data) {
+        return (data.length + 5 + SECTOR_BYTES - 1) / SECTOR_BYTES;
+    }
+
+    // Runs of repeated block states with random breaks, so the deflated chunk
+    // has a realistic size and never dedups against another chunk
+    private byte[] compressedChunk() {
+        ByteBuffer nbt = ByteBuffer.allocate(CHUNK_NBT_BYTES);
+        while (nbt.hasRemaining()) {
+            byte value = (byte) random.nextInt(16);
+            int run = Math.min(nbt.remaining(), 1 + random.nextInt(12));
+            for (int i = 0; i < run; i++) {
+                nbt.put(value);
+            }
+        }
+        return deflate(nbt.array());
+    }
+
+    // Overwrites a few short runs, so most of the chunk stays as it was
+    private byte[] edit(byte[] nbt) {
+        int edits = 1 + random.nextInt(MAX_EDITS_PER_CHUNK);
+        for (int i = 0; i < edits; i++) {
+            int start = random.nextInt(nbt.length);
+            int end = Math.min(nbt.length, start + 1 + random.nextInt(16));
+            byte value = (byte) random.nextInt(16);
+            for (int j = start; j < end; j++) {
+                nbt[j] = value;
+            }
+        }
+        return nbt;
+    }
+
+    private static byte[] deflate(byte[] nbt) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(nbt);
+        deflater.finish();
+        byte[] buffer = new byte[nbt.length + 64];
+        int length = deflater.deflate(buffer);
+        deflater.end();
+        byte[] data = new byte[length];
+        System.arraycopy(buffer, 0, data, 0, length);
+        return data;
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] nbt = new byte[CHUNK_NBT_BYTES];
+            int length = inflater.inflate(nbt);
+            if (length != CHUNK_NBT_BYTES || !inflater.finished()) {
+                throw new IOException("Unexpected chunk in synthetic world");
+            }
+            return nbt;
+        } catch (DataFormatException e) {
+            throw new IOException("Unexpected chunk in synthetic world", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private void writeSmallFiles() throws IOException {
+        byte[] level = new byte[2048 + random.nextInt(512)];
+        random.nextBytes(level);
+        Files.write(dir.resolve("level.dat"), level);
+        for (Path path : playerFiles) {
+            if (path.toString().endsWith(".dat")) {
+                byte[] data = new byte[4096 + random.nextInt(1024)];
+                random.nextBytes(data);
+                Files.write(path, data);
+            } else {
+                Files.write(path, jsonFile().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private String jsonFile() {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < 200; i++) {
+            json.append(i == 0 ? "" : ",").append("\"minecraft:key_").append(i).append("\":")
+                    .append(random.nextInt(10_000) + generation);
+        }
+        return json.append('}').toString();
+    }
+}
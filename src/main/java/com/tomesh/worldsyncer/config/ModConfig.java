@@ -18,10 +18,91 @@ import com.tomesh.worldsyncer.GithubBackupMod;
 @Config(name = GithubBackupMod.MOD_ID)
 public class ModConfig implements ConfigData {
 
+    @ConfigEntry.Gui.Tooltip
+    @ConfigEntry.Gui.EnumHandler(option = ConfigEntry.Gui.EnumHandler.EnumDisplayOption.BUTTON)
+    @Comment("Where worlds are backed up: GITHUB (private repos in your account) or LOCAL (a folder on this computer or a network drive).")
+    public Backend syncBackend = Backend.GITHUB;
+
     @ConfigEntry.Gui.Tooltip
     @Comment("Your GitHub Personal Access Token (PAT) with 'repo' scope.")
     public String githubAccessToken = "";
 
+    @ConfigEntry.Gui.Tooltip
+    @Comment("With the LOCAL backend, the folder world repositories are kept in, e.g. a NAS share.")
+    public String localBackupDirectory = "";
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("How many different worlds may sync with GitHub at the same time. Jobs for the same world always run one at a time.")
+    public int maxParallelSyncs = 3;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("When closing the game, wait on a progress screen until every backed-up world with changes has been pushed.")
+    public boolean flushOnExit = true;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("How many worlds are pushed at the same time while the game is closing. Never fewer than the parallel syncs setting.")
+    public int exitFlushWorkers = 4;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("Store region files as separate chunks so a backup only uploads the chunks that changed. Worlds stored either way can always be restored.")
+    public boolean chunkedRegionStorage = false;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("With chunked region storage, keep each chunk uncompressed in the repository so a chunk that changed a little uploads as a small difference. Backups and restores take more CPU time.")
+    public boolean uncompressedChunkStorage = false;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("Store level.dat, player data and data files uncompressed, with the timestamps the game updates on every save kept apart, so an unchanged file is not uploaded again. Restored files are equivalent but not byte-identical, and versions of the mod without this option cannot restore them.")
+    public boolean canonicalNbtStorage = false;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("How long (in minutes) the list of world repositories on GitHub is reused before it is checked again.")
+    public int repoListCacheMinutes = 10;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("How many commits of history to download when restoring a world from GitHub. 0 (default) downloads the full history, so older backups stay available offline; 1 downloads only the latest backup, which is faster for long histories.")
+    public int restoreCloneDepth = 0;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("When restoring a world that is not on this computer yet, download the area around the player first so the world can be played right away. The rest downloads in the background; the game waits if it needs a region that has not arrived.")
+    public boolean lazyRestore = true;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("Thin out old backups at most once a day: keep one per hour, then one per day, then one per week. Rewrites the history on GitHub.")
+    public boolean compactHistory = false;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("With history compaction on, how many days one backup per hour is kept.")
+    public int retainHourlyForDays = 1;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("With history compaction on, how many days one backup per day is kept. Older backups keep one per week.")
+    public int retainDailyForDays = 30;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("Commit changed files every time the game autosaves a world that is backed up, so the backup at exit only has the last few minutes left to upload.")
+    public boolean autosaveBackups = true;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("With autosave backups on, how often (in minutes) they are pushed to GitHub while playing. 0 pushes after every autosave.")
+    public int autosavePushMinutes = 15;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("Keep track of the files the game writes while a backed-up world is open, so backups only look at those instead of every file in the world.")
+    public boolean watchWorldFiles = true;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("Repack world repositories in the background while no world is loaded, once they collect many small files.")
+    public boolean backgroundMaintenance = true;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("Use aggressive repacking: smaller repositories, but each repack takes much longer.")
+    public boolean gcAggressive = false;
+
+    @ConfigEntry.Gui.Tooltip
+    @Comment("How many objects repacking compares when looking for deltas. Higher values pack tighter and run slower.")
+    public int gcDeltaWindow = 10;
+
     /**
      * Map of world folder name to backup entry (repo info and enabled state).
      * If enabled is true, the world will be synced with GitHub.
@@ -98,9 +179,19 @@ public class ModConfig implements ConfigData {
         noBackupWorlds.remove(worldKey(worldName));
     }
 
+    public enum Backend {
+        GITHUB,
+        LOCAL
+    }
+
     public static class WorldBackupEntry {
         public String repoFullName = "";
         public boolean enabled = false;
+        // Sparse profile: world folders this computer does not keep, e.g. "DIM-1",
+        // "dimensions/twilightforest", "stats" or "data". They stay in the backup as
+        // they are; includes bring back subfolders of an excluded folder
+        public List<String> sparseExcludes = new ArrayList<>();
+        public List<String> sparseIncludes = new ArrayList<>();
 
         public WorldBackupEntry() {
         }
@@ -109,5 +200,9 @@ public class ModConfig implements ConfigData {
             this.repoFullName = repoFullName;
             this.enabled = enabled;
         }
+
+        public boolean isSparse() {
+            return sparseExcludes != null && !sparseExcludes.isEmpty();
+        }
     }
 }
\ No newline at end of file